@@ -0,0 +1,80 @@
+package com.github.cwilper.fcrepo.dto.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures computing the {@link FedoraObjectDiff} between two snapshots of
+ * an object and applying it to a copy of the first, against copying the
+ * whole second snapshot, as a sync job would without a diff.
+ * <p>
+ * The object has the given number of managed datastreams, of three
+ * versions each. The second snapshot adds a version to one datastream and
+ * changes the content digest of another.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FedoraObjectDiffBenchmark {
+
+    @Param({"10", "100"})
+    public int datastreams;
+
+    private FedoraObject from;
+    private FedoraObject to;
+    private FedoraObjectDiff diff;
+
+    @Setup
+    public void setUp() {
+        from = new FedoraObject().pid("test:1").label("Test Object")
+                .createdDate(new Date(0)).lastModifiedDate(new Date(1));
+        for (int i = 0; i < datastreams; i++) {
+            Datastream ds = new Datastream("DS" + i)
+                    .controlGroup(ControlGroup.MANAGED);
+            for (int j = 0; j < 3; j++) {
+                ds.addVersion(new Date(j * 3600000L))
+                        .label("Version " + j)
+                        .mimeType("application/octet-stream")
+                        .contentDigest(new ContentDigest().type("MD5")
+                                .hexValue(Integer.toHexString(i * 3 + j)))
+                        .contentLocation(URI.create("file:/tmp/" + i + j));
+            }
+            from.putDatastream(ds);
+        }
+        to = from.copy().lastModifiedDate(new Date(2));
+        to.datastreams().get("DS0").addVersion(new Date(4 * 3600000L));
+        to.datastreams().get("DS1").versions().first().contentDigest(
+                new ContentDigest().type("MD5").hexValue("ff"));
+        diff = new FedoraObjectDiff(from, to);
+    }
+
+    @Benchmark
+    public FedoraObject copy() {
+        return to.copy();
+    }
+
+    @Benchmark
+    public FedoraObjectDiff diff() {
+        return new FedoraObjectDiff(from, to);
+    }
+
+    @Benchmark
+    public FedoraObject applyTo() {
+        return diff.applyTo(from.copy());
+    }
+}
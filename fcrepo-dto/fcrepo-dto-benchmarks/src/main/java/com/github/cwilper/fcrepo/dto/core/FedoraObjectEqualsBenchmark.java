@@ -0,0 +1,80 @@
+package com.github.cwilper.fcrepo.dto.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link FedoraDTO#equals(Object)} with the previous approach of
+ * comparing the string forms of both objects, for an object and its copy,
+ * and for an object and a copy that differs in its pid.
+ * <p>
+ * The object has the given number of managed datastreams, of three
+ * versions each.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FedoraObjectEqualsBenchmark {
+
+    @Param({"10", "100"})
+    public int datastreams;
+
+    private FedoraObject obj;
+    private FedoraObject same;
+    private FedoraObject different;
+
+    @Setup
+    public void setUp() {
+        obj = new FedoraObject().pid("test:1").label("Test Object")
+                .createdDate(new Date(0)).lastModifiedDate(new Date(1));
+        for (int i = 0; i < datastreams; i++) {
+            Datastream ds = new Datastream("DS" + i)
+                    .controlGroup(ControlGroup.MANAGED);
+            for (int j = 0; j < 3; j++) {
+                ds.addVersion(new Date(j * 3600000L))
+                        .label("Version " + j)
+                        .mimeType("application/octet-stream")
+                        .formatURI(URI.create("info:test/format"))
+                        .contentLocation(URI.create("file:/tmp/" + i + j));
+            }
+            obj.putDatastream(ds);
+        }
+        same = obj.copy();
+        different = obj.copy().pid("test:2");
+    }
+
+    @Benchmark
+    public boolean stringEqualsSame() {
+        return obj.toString().equals(same.toString());
+    }
+
+    @Benchmark
+    public boolean equalsSame() {
+        return obj.equals(same);
+    }
+
+    @Benchmark
+    public boolean stringEqualsDifferent() {
+        return obj.toString().equals(different.toString());
+    }
+
+    @Benchmark
+    public boolean equalsDifferent() {
+        return obj.equals(different);
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.cwilper.fcrepo.dto.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.security.MessageDigest;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link FedoraObject#fingerprint()} when nothing has changed
+ * since the last call, and when one version has, against digesting the
+ * object's description from scratch.
+ * <p>
+ * The object has the given number of managed datastreams, of three
+ * versions each.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FingerprintBenchmark {
+
+    @Param({"10", "100"})
+    public int datastreams;
+
+    private FedoraObject obj;
+    private DatastreamVersion changing;
+    private long size;
+
+    @Setup
+    public void setUp() {
+        obj = new FedoraObject().pid("test:1").label("Test Object")
+                .createdDate(new Date(0)).lastModifiedDate(new Date(1));
+        for (int i = 0; i < datastreams; i++) {
+            Datastream ds = new Datastream("DS" + i)
+                    .controlGroup(ControlGroup.MANAGED);
+            for (int j = 0; j < 3; j++) {
+                ds.addVersion(new Date(j * 3600000L))
+                        .label("Version " + j)
+                        .mimeType("application/octet-stream")
+                        .contentDigest(new ContentDigest().type("MD5")
+                                .hexValue(Integer.toHexString(i * 3 + j)))
+                        .contentLocation(URI.create("file:/tmp/" + i + j));
+            }
+            obj.putDatastream(ds);
+        }
+        changing = obj.datastreams().get("DS0").versions().first();
+        obj.fingerprint();
+    }
+
+    @Benchmark
+    public byte[] digestDescription() throws Exception {
+        return MessageDigest.getInstance("MD5").digest(
+                obj.toString().getBytes("UTF-8"));
+    }
+
+    @Benchmark
+    public Fingerprint unchanged() {
+        return obj.fingerprint();
+    }
+
+    @Benchmark
+    public Fingerprint oneVersionChanged() {
+        changing.size(size++);
+        return obj.fingerprint();
+    }
+}
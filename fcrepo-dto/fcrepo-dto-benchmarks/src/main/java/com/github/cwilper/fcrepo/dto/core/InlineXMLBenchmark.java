@@ -0,0 +1,64 @@
+package com.github.cwilper.fcrepo.dto.core;
+
+import com.github.cwilper.fcrepo.dto.core.io.XMLUtil;
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the construction of {@link InlineXML} with the previous
+ * approach of pretty-printing the value to check that it is well-formed,
+ * then canonicalizing it with xmlsec.
+ * <p>
+ * The value is a Dublin Core record with the given number of elements.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InlineXMLBenchmark {
+
+    @Param({"10", "1000"})
+    public int elements;
+
+    private byte[] xml;
+
+    @Setup
+    public void setUp() throws IOException {
+        org.apache.xml.security.Init.init();
+        StringBuilder s = new StringBuilder();
+        s.append("<oai_dc:dc xmlns:oai_dc=\"http://www.openarchives.org/OAI/"
+                + "2.0/oai_dc/\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\">");
+        for (int i = 0; i < elements; i++) {
+            s.append("\n  <dc:subject xml:lang=\"en\">Subject ").append(i)
+                    .append(" &amp; more</dc:subject>");
+        }
+        s.append("\n</oai_dc:dc>");
+        xml = s.toString().getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public byte[] prettyPrintThenXMLSec() throws Exception {
+        XMLUtil.prettyPrint(xml, true);
+        return Canonicalizer.getInstance(
+                Canonicalizer.ALGO_ID_C14N11_OMIT_COMMENTS).canonicalize(xml);
+    }
+
+    @Benchmark
+    public InlineXML inlineXML() throws IOException {
+        return new InlineXML(xml);
+    }
+}
@@ -0,0 +1,85 @@
+package com.github.cwilper.fcrepo.dto.core.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link DateUtil} with the previous approach of creating a
+ * <code>SimpleDateFormat</code> per call.
+ * <p>
+ * The <code>format</code> benchmarks cycle through a small set of dates,
+ * as when the same object and datastream dates are formatted repeatedly
+ * for writing or equality checks, so they include the effect of the
+ * formatted string cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateUtilBenchmark {
+
+    @Param({"2011-01-16T08:27:01.002Z", "2011-01-16T08:27:01"})
+    public String dateString;
+
+    private final Date[] dates = new Date[16];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = new Date(1295166421002L + i * 86400000L);
+        }
+    }
+
+    @Benchmark
+    public Date parseSimpleDateFormat() {
+        SimpleDateFormat dateFormat = new SimpleDateFormat();
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        for (String format: DateUtil.ALLOWED_DATE_FORMATS) {
+            dateFormat.applyPattern(format);
+            Date date = dateFormat.parse(dateString, new ParsePosition(0));
+            if (date != null) return date;
+        }
+        return null;
+    }
+
+    @Benchmark
+    public Date parseDateUtil() {
+        return DateUtil.toDate(dateString);
+    }
+
+    @Benchmark
+    public String formatSimpleDateFormat() {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(
+                DateUtil.PREFERRED_DATE_FORMAT);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return dateFormat.format(nextDate());
+    }
+
+    @Benchmark
+    public String formatDateUtil() {
+        return DateUtil.toString(nextDate());
+    }
+
+    private Date nextDate() {
+        next = (next + 1) & (dates.length - 1);
+        return dates[next];
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.cwilper.fcrepo.dto.core.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link XMLUtil#prettyPrint(byte[], boolean)}, which reuses
+ * compiled stylesheets, creating a transformer from them per call, with
+ * the previous approach of compiling the stylesheet on every call and
+ * trimming the result through an intermediate string.
+ * <p>
+ * The value is a Dublin Core record with the given number of elements.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrettyPrintBenchmark {
+
+    private static final String XSL = "<xsl:stylesheet version=\"1.0\" "
+            + " xmlns:xalan=\"http://xml.apache.org/xalan\""
+            + " xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+            + "<xsl:output method=\"xml\" indent=\"yes\""
+            + " xalan:indent-amount=\"2\" omit-xml-declaration=\"yes\"/>"
+            + "<xsl:strip-space elements=\"*\"/>"
+            + "<xsl:template match=\"/\">"
+            + "  <xsl:copy-of select=\".\"/>"
+            + "</xsl:template>"
+            + "</xsl:stylesheet>";
+
+    @Param({"10", "1000"})
+    public int elements;
+
+    private byte[] xml;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder s = new StringBuilder();
+        s.append("<oai_dc:dc xmlns:oai_dc=\"http://www.openarchives.org/OAI/"
+                + "2.0/oai_dc/\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\">");
+        for (int i = 0; i < elements; i++) {
+            s.append("<dc:subject xml:lang=\"en\">Subject ").append(i)
+                    .append(" &amp; more</dc:subject>");
+        }
+        s.append("</oai_dc:dc>");
+        xml = s.toString().getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public byte[] compileEachTime() throws Exception {
+        Transformer t = TransformerFactory.newInstance().newTransformer(
+                new StreamSource(new StringReader(XSL)));
+        StringWriter preTrimmed = new StringWriter();
+        t.transform(new StreamSource(new ByteArrayInputStream(xml)),
+                new StreamResult(preTrimmed));
+        return preTrimmed.toString().trim().getBytes("UTF-8");
+    }
+
+    @Benchmark
+    public byte[] prettyPrint() throws IOException {
+        return XMLUtil.prettyPrint(xml, true);
+    }
+}
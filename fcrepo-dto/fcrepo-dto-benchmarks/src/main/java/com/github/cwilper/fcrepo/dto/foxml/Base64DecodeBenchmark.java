@@ -0,0 +1,123 @@
+package com.github.cwilper.fcrepo.dto.foxml;
+
+import com.github.cwilper.fcrepo.dto.core.Datastream;
+import com.github.cwilper.fcrepo.dto.core.DatastreamVersion;
+import com.github.cwilper.fcrepo.dto.core.FedoraObject;
+import com.github.cwilper.fcrepo.dto.core.io.ContentHandler;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64OutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares decoding of <code>foxml:binaryContent</code> via
+ * {@link Base64CharDecoder} with the previous approach of encoding each
+ * character event to bytes and writing them through a commons-codec
+ * <code>Base64OutputStream</code>.
+ * <p>
+ * The <code>decode*</code> benchmarks feed the same 76-character lines a
+ * StAX parser would typically report, and isolate the decoding cost. The
+ * <code>readObject</code> benchmark measures the whole reader on a
+ * document containing a single version with binary content.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Base64DecodeBenchmark {
+
+    @Param({"1024", "1048576"})
+    public int contentSize;
+
+    private char[][] lines;
+    private byte[] foxml;
+    private Base64CharDecoder decoder;
+    private FOXMLReader reader;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] content = new byte[contentSize];
+        new Random(42).nextBytes(content);
+        String encoded = new String(Base64.encodeBase64Chunked(content),
+                "US-ASCII");
+        String[] split = encoded.split("\r\n");
+        lines = new char[split.length][];
+        for (int i = 0; i < split.length; i++) {
+            lines[i] = (split[i] + "\n").toCharArray();
+        }
+        foxml = ("<digitalObject xmlns='" + Constants.xmlns + "'"
+                + " PID='test:1'>"
+                + "<datastream ID='ds' CONTROL_GROUP='M'>"
+                + "<datastreamVersion ID='ds.0'>"
+                + "<binaryContent>" + encoded + "</binaryContent>"
+                + "</datastreamVersion></datastream></digitalObject>")
+                .getBytes("UTF-8");
+        decoder = new Base64CharDecoder();
+        reader = new FOXMLReader();
+        reader.setContentHandler(new NullContentHandler());
+    }
+
+    @TearDown
+    public void tearDown() {
+        reader.close();
+    }
+
+    @Benchmark
+    public void decodeBase64OutputStream() throws IOException {
+        OutputStream out = new Base64OutputStream(
+                new NullOutputStream(), false);
+        for (char[] line: lines) {
+            out.write(new String(line, 0, line.length).getBytes(
+                    Constants.CHAR_ENCODING));
+        }
+        out.close();
+    }
+
+    @Benchmark
+    public void decodeBase64CharDecoder() throws IOException {
+        decoder.start(new NullOutputStream());
+        for (char[] line: lines) {
+            decoder.decode(line, 0, line.length);
+        }
+        decoder.finish();
+    }
+
+    @Benchmark
+    public FedoraObject readObject() throws IOException {
+        return reader.readObject(new ByteArrayInputStream(foxml));
+    }
+
+    // discards all content
+    private static class NullContentHandler implements ContentHandler {
+
+        @Override
+        public OutputStream handleContent(FedoraObject obj,
+                                          Datastream ds,
+                                          DatastreamVersion dsv) {
+            return new NullOutputStream();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
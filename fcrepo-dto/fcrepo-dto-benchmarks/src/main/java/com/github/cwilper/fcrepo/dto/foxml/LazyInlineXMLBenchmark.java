@@ -0,0 +1,95 @@
+package com.github.cwilper.fcrepo.dto.foxml;
+
+import com.github.cwilper.fcrepo.dto.core.ControlGroup;
+import com.github.cwilper.fcrepo.dto.core.Datastream;
+import com.github.cwilper.fcrepo.dto.core.DatastreamVersion;
+import com.github.cwilper.fcrepo.dto.core.FedoraObject;
+import com.github.cwilper.fcrepo.dto.core.InlineXML;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures copying an object from one FOXML stream to another, as bulk
+ * migration jobs do, with and without lazy inline XML.
+ * <p>
+ * The object has eight inline XML datastreams of three versions each,
+ * every version a Dublin Core record of about 30 elements.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LazyInlineXMLBenchmark {
+
+    @Param({"false", "true"})
+    public boolean lazy;
+
+    private byte[] foxml;
+    private FOXMLReader reader;
+    private FOXMLWriter writer;
+
+    @Setup
+    public void setUp() throws IOException {
+        reader = new FOXMLReader();
+        reader.setLazyInlineXML(lazy);
+        writer = new FOXMLWriter();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeObject(newObject(), out);
+        foxml = out.toByteArray();
+    }
+
+    @TearDown
+    public void tearDown() {
+        reader.close();
+        writer.close();
+    }
+
+    @Benchmark
+    public void copyObject() throws IOException {
+        writer.writeObject(reader.readObject(new ByteArrayInputStream(foxml)),
+                new NullOutputStream());
+    }
+
+    private static FedoraObject newObject() throws IOException {
+        FedoraObject obj = new FedoraObject().pid("test:1");
+        for (int i = 0; i < 8; i++) {
+            Datastream ds = new Datastream("DS" + i)
+                    .controlGroup(ControlGroup.INLINE_XML);
+            for (int j = 0; j < 3; j++) {
+                DatastreamVersion dsv = ds.addVersion(
+                        new Date(j * 3600000L));
+                dsv.mimeType("text/xml");
+                StringBuilder s = new StringBuilder();
+                s.append("<oai_dc:dc xmlns:oai_dc=\"http://www.openarchives."
+                        + "org/OAI/2.0/oai_dc/\" xmlns:dc=\"http://purl.org/"
+                        + "dc/elements/1.1/\">");
+                for (int k = 0; k < 30; k++) {
+                    s.append("\n  <dc:subject xml:lang=\"en\">Subject ")
+                            .append(k).append(" &amp; more</dc:subject>");
+                }
+                s.append("\n</oai_dc:dc>");
+                dsv.inlineXML(new InlineXML(s.toString()));
+            }
+            obj.putDatastream(ds);
+        }
+        return obj;
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.cwilper.fcrepo.dto.foxml;
+
+import com.github.cwilper.fcrepo.dto.core.State;
+import com.github.cwilper.fcrepo.dto.core.io.DateUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link LenientDecoder} and the current {@link DateUtil} with the
+ * previous exception-based parsing done by {@link FOXMLReader}.
+ * <p>
+ * With <code>wellFormed</code> input, states use short names, dates have
+ * milliseconds, and all values parse on the first attempt. With
+ * <code>dirty</code> input, states use long names, dates lack
+ * milliseconds, and sizes and URIs are malformed, as is common in legacy
+ * data.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LenientDecodeBenchmark {
+
+    @Param({"wellFormed", "dirty"})
+    public String input;
+
+    private String state;
+    private String size;
+    private String uri;
+    private String date;
+
+    @Setup
+    public void setUp() {
+        if (input.equals("wellFormed")) {
+            state = "A";
+            size = "123456";
+            uri = "info:fedora/fedora-system:FedoraDC";
+            date = "2011-01-16T08:27:01.002Z";
+        } else {
+            state = "Active";
+            size = "123 bytes";
+            uri = "info:fedora/bad uri";
+            date = "2011-01-16T08:27:01";
+        }
+    }
+
+    @Benchmark
+    public void exceptionBased(Blackhole bh) {
+        bh.consume(oldParseState(state));
+        bh.consume(oldParseLong(size));
+        bh.consume(oldParseURI(uri));
+        bh.consume(oldParseDate(date));
+    }
+
+    @Benchmark
+    public void lenient(Blackhole bh) {
+        bh.consume(LenientDecoder.decodeState(state));
+        bh.consume(LenientDecoder.decodeLong(size));
+        bh.consume(LenientDecoder.decodeURI(uri));
+        bh.consume(DateUtil.toDate(date));
+    }
+
+    private static State oldParseState(String value) {
+        try {
+            return State.forShortName(value);
+        } catch (IllegalArgumentException e) {
+            try {
+                return State.forLongName(value);
+            } catch (IllegalArgumentException e2) {
+                return null;
+            }
+        }
+    }
+
+    private static Long oldParseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static URI oldParseURI(String value) {
+        try {
+            return new URI(value);
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private static Date oldParseDate(String value) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat();
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        for (String format: DateUtil.ALLOWED_DATE_FORMATS) {
+            dateFormat.applyPattern(format);
+            try {
+                return dateFormat.parse(value);
+            } catch (ParseException e) {
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.cwilper.fcrepo.dto.foxml;
+
+import com.github.cwilper.fcrepo.dto.core.ControlGroup;
+import com.github.cwilper.fcrepo.dto.core.Datastream;
+import com.github.cwilper.fcrepo.dto.core.DatastreamVersion;
+import com.github.cwilper.fcrepo.dto.core.FedoraObject;
+import com.github.cwilper.fcrepo.dto.core.InlineXML;
+import com.github.cwilper.fcrepo.dto.core.State;
+import com.github.cwilper.fcrepo.dto.core.io.ReadProjection;
+import com.github.cwilper.fcrepo.dto.core.io.StAXBackend;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of {@link FOXMLReader} and {@link FOXMLWriter}
+ * with each {@link StAXBackend}.
+ * <p>
+ * The corpus is a single typical object: a handful of properties, and
+ * datastreams of each control group, several versions each, with small
+ * namespaced inline XML. When reading, inline XML is tokenized but not
+ * turned into {@link InlineXML} values, whose construction cost would
+ * otherwise hide the differences between backends.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StAXBackendBenchmark {
+
+    @Param({"DEFAULT", "JDK", "WOODSTOX", "AALTO"})
+    public StAXBackend backend;
+
+    private FedoraObject obj;
+    private byte[] foxml;
+    private FOXMLReader reader;
+    private FOXMLWriter writer;
+
+    @Setup
+    public void setUp() throws IOException {
+        obj = newObject();
+        reader = new FOXMLReader();
+        reader.setStAXBackend(backend);
+        ReadProjection projection = new ReadProjection();
+        projection.setInlineXML(false);
+        reader.setProjection(projection);
+        writer = new FOXMLWriter();
+        writer.setStAXBackend(backend);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeObject(obj, out);
+        foxml = out.toByteArray();
+    }
+
+    @TearDown
+    public void tearDown() {
+        reader.close();
+        writer.close();
+    }
+
+    @Benchmark
+    public FedoraObject readObject() throws IOException {
+        return reader.readObject(new ByteArrayInputStream(foxml));
+    }
+
+    @Benchmark
+    public void writeObject() throws IOException {
+        writer.writeObject(obj, new NullOutputStream());
+    }
+
+    private static FedoraObject newObject() throws IOException {
+        FedoraObject obj = new FedoraObject().pid("test:1")
+                .state(State.ACTIVE).label("A typical object")
+                .ownerId("fedoraAdmin").createdDate(new Date(0))
+                .lastModifiedDate(new Date(86400000L));
+        for (int i = 0; i < 8; i++) {
+            ControlGroup controlGroup = i < 4 ? ControlGroup.INLINE_XML
+                    : i < 6 ? ControlGroup.MANAGED : ControlGroup.EXTERNAL;
+            Datastream ds = new Datastream("DS" + i).state(State.ACTIVE)
+                    .controlGroup(controlGroup).versionable(true);
+            for (int j = 0; j < 3; j++) {
+                DatastreamVersion dsv = ds.addVersion(
+                        new Date(j * 3600000L));
+                dsv.label("Version " + j).mimeType("text/xml")
+                        .formatURI(URI.create("info:fedora/fedora-system:"
+                                + "FedoraDC-1.0"));
+                if (controlGroup == ControlGroup.INLINE_XML) {
+                    dsv.inlineXML(new InlineXML(newDC(i, j)));
+                } else {
+                    dsv.contentLocation(URI.create("http://example.org/ds"
+                            + i + "/" + j));
+                }
+            }
+            obj.putDatastream(ds);
+        }
+        return obj;
+    }
+
+    private static String newDC(int i, int j) {
+        StringBuilder s = new StringBuilder();
+        s.append("<oai_dc:dc xmlns:oai_dc=\"http://www.openarchives.org/OAI/"
+                + "2.0/oai_dc/\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\">");
+        s.append("<dc:title>Datastream ").append(i).append(" version ")
+                .append(j).append("</dc:title>");
+        for (int k = 0; k < 10; k++) {
+            s.append("<dc:subject>Subject ").append(k)
+                    .append(" &amp; more</dc:subject>");
+        }
+        s.append("<dc:identifier>test:1</dc:identifier>");
+        s.append("</oai_dc:dc>");
+        return s.toString();
+    }
+}
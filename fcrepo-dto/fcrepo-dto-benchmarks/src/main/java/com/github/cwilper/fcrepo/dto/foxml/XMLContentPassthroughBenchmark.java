@@ -0,0 +1,97 @@
+package com.github.cwilper.fcrepo.dto.foxml;
+
+import com.github.cwilper.fcrepo.dto.core.ControlGroup;
+import com.github.cwilper.fcrepo.dto.core.Datastream;
+import com.github.cwilper.fcrepo.dto.core.DatastreamVersion;
+import com.github.cwilper.fcrepo.dto.core.FedoraObject;
+import com.github.cwilper.fcrepo.dto.core.InlineXML;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading an object from a stream, whose inline XML is
+ * re-serialized from parser events, with reading it from a buffer, whose
+ * inline XML is taken as written.
+ * <p>
+ * The object has eight inline XML datastreams of three versions each,
+ * every version a Dublin Core record of about 30 elements. Inline XML is
+ * read lazily, so canonicalization doesn't hide the difference.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XMLContentPassthroughBenchmark {
+
+    private byte[] foxml;
+    private FOXMLReader reader;
+    private FOXMLWriter writer;
+
+    @Setup
+    public void setUp() throws IOException {
+        reader = new FOXMLReader();
+        reader.setLazyInlineXML(true);
+        writer = new FOXMLWriter();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeObject(newObject(), out);
+        foxml = out.toByteArray();
+    }
+
+    @TearDown
+    public void tearDown() {
+        reader.close();
+        writer.close();
+    }
+
+    @Benchmark
+    public FedoraObject readFromStream() throws IOException {
+        return reader.readObject(new ByteArrayInputStream(foxml));
+    }
+
+    @Benchmark
+    public FedoraObject readFromBuffer() throws IOException {
+        return reader.readObject(ByteBuffer.wrap(foxml));
+    }
+
+    private static FedoraObject newObject() throws IOException {
+        FedoraObject obj = new FedoraObject().pid("test:1");
+        for (int i = 0; i < 8; i++) {
+            Datastream ds = new Datastream("DS" + i)
+                    .controlGroup(ControlGroup.INLINE_XML);
+            for (int j = 0; j < 3; j++) {
+                DatastreamVersion dsv = ds.addVersion(
+                        new Date(j * 3600000L));
+                dsv.mimeType("text/xml");
+                StringBuilder s = new StringBuilder();
+                s.append("<oai_dc:dc xmlns:oai_dc=\"http://www.openarchives."
+                        + "org/OAI/2.0/oai_dc/\" xmlns:dc=\"http://purl.org/"
+                        + "dc/elements/1.1/\">");
+                for (int k = 0; k < 30; k++) {
+                    s.append("\n  <dc:subject xml:lang=\"en\">Subject ")
+                            .append(k).append(" &amp; more</dc:subject>");
+                }
+                s.append("\n</oai_dc:dc>");
+                dsv.inlineXML(new InlineXML(s.toString()));
+            }
+            obj.putDatastream(ds);
+        }
+        return obj;
+    }
+}
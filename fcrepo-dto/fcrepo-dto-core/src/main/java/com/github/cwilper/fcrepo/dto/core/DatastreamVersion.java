@@ -5,8 +5,6 @@ import java.util.Date;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
-import com.github.cwilper.fcrepo.dto.core.io.DateUtil;
-
 /**
  * A particular revision of a {@link Datastream}.
  *
@@ -259,7 +257,7 @@ public class DatastreamVersion extends FedoraDTO {
         return new Object[] {
                 id,
                 label,
-                DateUtil.toString(createdDate),
+                createdDate,
                 mimeType,
                 formatURI,
                 contentDigest,
@@ -1,28 +1,48 @@
 package com.github.cwilper.fcrepo.dto.core;
 
+import com.github.cwilper.fcrepo.dto.core.io.DateUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Superclass of all (non-Enum) Fedora Data Transfer Object classes.
  * <p>
  * This superclass exists solely to provide useful and correct implementations
  * of {@link Object#hashCode()}, {@link Object#equals(Object)},
  * and {@link Object#toString()}.
+ * <p>
+ * Two instances are equal when their descriptions, as given by
+ * {@link #toString()}, would be equal. This is determined field by field,
+ * without producing the descriptions, and stops at the first difference.
+ * <p>
+ * Equal instances also have the same {@link #fingerprint()}.
  */
 abstract class FedoraDTO {
 
+    private volatile FingerprintMemo fingerprintMemo;
+
     /**
      * Gets the hash code for this instance. In accordance with the contract
      * for {@link Object#hashCode()}, this method is guaranteed to return
      * the same hash code for two objects when <code>o1.equals(o2)</code>
+     * <p>
+     * The hash code is taken from the {@link #fingerprint()}, so it is
+     * kept for later calls, and recomputed only once something has
+     * changed, in the same way.
+     * <p>
+     * Subclasses may override this, along with {@link #equals(Object)},
+     * with a cheaper but equivalent implementation.
      *
      * @return the hash code.
      */
     @Override
-    public final int hashCode() {
-        int hash = 0;
-        for (Object o: getEqArray()) {
-            if (o != null) hash += o.hashCode();
-        }
-        return hash;
+    public int hashCode() {
+        return fingerprint().hashCode();
     }
 
     /**
@@ -34,8 +54,16 @@ abstract class FedoraDTO {
      * @return true if equal, false otherwise.
      */
     @Override
-    public final boolean equals(Object o) {
-        return o instanceof FedoraDTO && o.toString().equals(toString());
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (o == null || o.getClass() != getClass()) return false;
+        Object[] values = getEqArray();
+        Object[] otherValues = ((FedoraDTO) o).getEqArray();
+        if (values.length != otherValues.length) return false;
+        for (int i = 0; i < values.length; i++) {
+            if (!valuesEqual(values[i], otherValues[i])) return false;
+        }
+        return true;
     }
 
     /**
@@ -54,6 +82,8 @@ abstract class FedoraDTO {
             if (i > 0) sb.append(",");
             if (o instanceof String) {
                 sb.append("\"" + o + "\"");
+            } else if (o instanceof Date) {
+                sb.append("\"" + DateUtil.toString((Date) o) + "\"");
             } else {
                 sb.append(o);
             }
@@ -63,6 +93,27 @@ abstract class FedoraDTO {
         return sb.toString();
     }
 
+    /**
+     * Gets a fingerprint of this instance's content, which is the same for
+     * all equal instances, in any process and any run.
+     * <p>
+     * The fingerprint is kept for later calls. It is recomputed only once
+     * a value has been set, or a value has been added to or removed from
+     * a collection, here or in a nested instance. Checking for this takes
+     * time in proportion to the number of values, but no hashing.
+     *
+     * @return the fingerprint.
+     */
+    public Fingerprint fingerprint() {
+        Object[] inputs = fingerprintInputs();
+        FingerprintMemo memo = fingerprintMemo;
+        if (memo != null && memo.matches(inputs)) return memo.fingerprint;
+        Fingerprint fingerprint = Fingerprint.of(getClass().getSimpleName(),
+                inputs);
+        fingerprintMemo = new FingerprintMemo(inputs, fingerprint);
+        return fingerprint;
+    }
+
     /**
      * Gets a comprehensive array of values that embody this instance's
      * state, for the purpose of equality testing.
@@ -71,4 +122,108 @@ abstract class FedoraDTO {
      */
     abstract Object[] getEqArray();
 
+    // flattens the equality array: nested instances are given by their
+    // fingerprints, and collections and maps by their sizes followed by
+    // their elements, or keys and values
+    private Object[] fingerprintInputs() {
+        List<Object> inputs = new ArrayList<Object>();
+        for (Object o: getEqArray()) {
+            addFingerprintInputs(o, inputs);
+        }
+        return inputs.toArray();
+    }
+
+    private static void addFingerprintInputs(Object o, List<Object> inputs) {
+        if (o == null || o instanceof String) {
+            // the most common case, checked first since it's cheapest
+            inputs.add(o);
+        } else if (o instanceof FedoraDTO) {
+            inputs.add(((FedoraDTO) o).fingerprint());
+        } else if (o instanceof Collection) {
+            Collection<?> c = (Collection<?>) o;
+            inputs.add(c.size());
+            for (Object element: c) {
+                addFingerprintInputs(element, inputs);
+            }
+        } else if (o instanceof Map) {
+            Map<?, ?> m = (Map<?, ?>) o;
+            inputs.add(m.size());
+            for (Map.Entry<?, ?> entry: m.entrySet()) {
+                addFingerprintInputs(entry.getKey(), inputs);
+                addFingerprintInputs(entry.getValue(), inputs);
+            }
+        } else {
+            inputs.add(o);
+        }
+    }
+
+    // tells whether two values would be described the same way
+    private static boolean valuesEqual(Object a, Object b) {
+        if (a == b) return true;
+        if (a == null || b == null) return false;
+        if (a instanceof String || a instanceof FedoraDTO) return a.equals(b);
+        if (a instanceof Date) {
+            return b instanceof Date
+                    && ((Date) a).getTime() == ((Date) b).getTime();
+        }
+        if (a instanceof Collection) {
+            return b instanceof Collection
+                    && elementsEqual((Collection<?>) a, (Collection<?>) b);
+        }
+        if (a instanceof Map) {
+            return b instanceof Map
+                    && elementsEqual(((Map<?, ?>) a).entrySet(),
+                            ((Map<?, ?>) b).entrySet());
+        }
+        if (a instanceof Map.Entry) {
+            Map.Entry<?, ?> e1 = (Map.Entry<?, ?>) a;
+            Map.Entry<?, ?> e2 = (Map.Entry<?, ?>) b;
+            return valuesEqual(e1.getKey(), e2.getKey())
+                    && valuesEqual(e1.getValue(), e2.getValue());
+        }
+        // enums, numbers, booleans, and URIs, which may be equal without
+        // being written the same way
+        return a.getClass() == b.getClass()
+                && a.toString().equals(b.toString());
+    }
+
+    // compares elements in iteration order
+    private static boolean elementsEqual(Collection<?> a, Collection<?> b) {
+        if (a.size() != b.size()) return false;
+        Iterator<?> i1 = a.iterator();
+        Iterator<?> i2 = b.iterator();
+        while (i1.hasNext()) {
+            if (!valuesEqual(i1.next(), i2.next())) return false;
+        }
+        return true;
+    }
+
+    // a fingerprint and the inputs it was computed from. Values are set
+    // by replacing them, and dates are copied in and out, so an input that
+    // is the same instance as before is unchanged. Nested fingerprints
+    // are kept by the nested instances, so they are also the same instance
+    // while unchanged.
+    private static class FingerprintMemo {
+
+        private final Object[] inputs;
+        private final Fingerprint fingerprint;
+
+        FingerprintMemo(Object[] inputs, Fingerprint fingerprint) {
+            this.inputs = inputs;
+            this.fingerprint = fingerprint;
+        }
+
+        boolean matches(Object[] otherInputs) {
+            if (inputs.length != otherInputs.length) return false;
+            for (int i = 0; i < inputs.length; i++) {
+                Object a = inputs[i];
+                Object b = otherInputs[i];
+                if (a != b && !(a instanceof Integer && a.equals(b))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
 }
\ No newline at end of file
@@ -1,7 +1,5 @@
 package com.github.cwilper.fcrepo.dto.core;
 
-import com.github.cwilper.fcrepo.dto.core.io.DateUtil;
-
 import java.util.Date;
 import java.util.SortedMap;
 import java.util.TreeMap;
@@ -210,8 +208,8 @@ public class FedoraObject extends FedoraDTO {
                 state,
                 label,
                 ownerId,
-                DateUtil.toString(createdDate),
-                DateUtil.toString(lastModifiedDate),
+                createdDate,
+                lastModifiedDate,
                 datastreams };
     }
 
@@ -0,0 +1,308 @@
+package com.github.cwilper.fcrepo.dto.core;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The changes between two snapshots of a {@link FedoraObject}, which can be
+ * applied to the first to produce the second.
+ * <p>
+ * The changes are determined by walking the datastreams and versions of
+ * both objects side by side, in the order they are kept in, so each value
+ * is compared at most once. Datastreams are identified by id. Versions are
+ * identified by their position in {@link Datastream#versions()}, that is,
+ * by created date, or by id if they have none. A version whose other
+ * values differ, such as its content digest, is considered changed.
+ * <p>
+ * Instances hold copies of the values they were created from, so they are
+ * not affected by later changes to either object.
+ */
+public class FedoraObjectDiff {
+
+    private final SortedSet<String> removedDatastreams =
+            new TreeSet<String>();
+    private final SortedMap<String, Datastream> addedDatastreams =
+            new TreeMap<String, Datastream>();
+    private final SortedMap<String, DatastreamDiff> changedDatastreams =
+            new TreeMap<String, DatastreamDiff>();
+
+    private FedoraObject properties;
+
+    /**
+     * Creates an instance holding the changes from one object to another.
+     *
+     * @param from the original object.
+     * @param to the changed object.
+     */
+    public FedoraObjectDiff(FedoraObject from, FedoraObject to) {
+        FedoraObject toProperties = propertiesOf(to);
+        if (!propertiesOf(from).equals(toProperties)) {
+            properties = toProperties;
+        }
+        Iterator<Datastream> a = from.datastreams().values().iterator();
+        Iterator<Datastream> b = to.datastreams().values().iterator();
+        Datastream dsA = next(a);
+        Datastream dsB = next(b);
+        while (dsA != null || dsB != null) {
+            int c = dsA == null ? 1
+                    : dsB == null ? -1 : dsA.id().compareTo(dsB.id());
+            if (c < 0) {
+                removedDatastreams.add(dsA.id());
+                dsA = next(a);
+            } else if (c > 0) {
+                addedDatastreams.put(dsB.id(), dsB.copy());
+                dsB = next(b);
+            } else {
+                if (!dsA.equals(dsB)) {
+                    changedDatastreams.put(dsA.id(),
+                            new DatastreamDiff(dsA, dsB));
+                }
+                dsA = next(a);
+                dsB = next(b);
+            }
+        }
+    }
+
+    /**
+     * Gets the object's new properties, if any have changed.
+     *
+     * @return an object with the new values of all properties and no
+     *         datastreams, or <code>null</code> if none have changed.
+     */
+    public FedoraObject properties() {
+        return properties;
+    }
+
+    /**
+     * Gets the ids of the datastreams that were removed.
+     *
+     * @return the set, possibly empty, never <code>null</code>.
+     */
+    public SortedSet<String> removedDatastreams() {
+        return removedDatastreams;
+    }
+
+    /**
+     * Gets the datastreams that were added, by id.
+     *
+     * @return the map, possibly empty, never <code>null</code>.
+     */
+    public SortedMap<String, Datastream> addedDatastreams() {
+        return addedDatastreams;
+    }
+
+    /**
+     * Gets the changes to datastreams that exist in both objects, by id.
+     *
+     * @return the map, possibly empty, never <code>null</code>.
+     */
+    public SortedMap<String, DatastreamDiff> changedDatastreams() {
+        return changedDatastreams;
+    }
+
+    /**
+     * Tells whether there are no changes.
+     *
+     * @return true if the objects were equal, false otherwise.
+     */
+    public boolean isEmpty() {
+        return properties == null && removedDatastreams.isEmpty()
+                && addedDatastreams.isEmpty() && changedDatastreams.isEmpty();
+    }
+
+    /**
+     * Applies the changes to the given object. If it is equal to the
+     * original object, it will then be equal to the changed one.
+     * Removals of datastreams and versions that don't exist are ignored.
+     *
+     * @param obj the object to change.
+     * @return the given object.
+     */
+    public FedoraObject applyTo(FedoraObject obj) {
+        if (properties != null) {
+            obj.pid(properties.pid())
+                    .state(properties.state())
+                    .label(properties.label())
+                    .ownerId(properties.ownerId())
+                    .createdDate(properties.createdDate())
+                    .lastModifiedDate(properties.lastModifiedDate());
+        }
+        for (String id: removedDatastreams) {
+            obj.datastreams().remove(id);
+        }
+        for (Datastream ds: addedDatastreams.values()) {
+            obj.putDatastream(ds.copy());
+        }
+        for (DatastreamDiff diff: changedDatastreams.values()) {
+            Datastream ds = obj.datastreams().get(diff.id());
+            if (ds == null) {
+                ds = new Datastream(diff.id());
+                obj.putDatastream(ds);
+            }
+            diff.applyTo(ds);
+        }
+        return obj;
+    }
+
+    /**
+     * The changes between two snapshots of a {@link Datastream}.
+     */
+    public static class DatastreamDiff {
+
+        private final String id;
+
+        private final SortedSet<DatastreamVersion> removedVersions;
+        private final SortedSet<DatastreamVersion> addedVersions;
+        private final SortedSet<DatastreamVersion> changedVersions;
+
+        private Datastream properties;
+
+        /**
+         * Creates an instance holding the changes from one datastream to
+         * another with the same id.
+         *
+         * @param from the original datastream.
+         * @param to the changed datastream.
+         * @throws IllegalArgumentException if the ids differ.
+         */
+        public DatastreamDiff(Datastream from, Datastream to) {
+            if (!from.id().equals(to.id())) {
+                throw new IllegalArgumentException();
+            }
+            id = from.id();
+            Datastream toProperties = propertiesOf(to);
+            if (!propertiesOf(from).equals(toProperties)) {
+                properties = toProperties;
+            }
+            Comparator<? super DatastreamVersion> order =
+                    from.versions().comparator();
+            removedVersions = new TreeSet<DatastreamVersion>(order);
+            addedVersions = new TreeSet<DatastreamVersion>(order);
+            changedVersions = new TreeSet<DatastreamVersion>(order);
+            Iterator<DatastreamVersion> a = from.versions().iterator();
+            Iterator<DatastreamVersion> b = to.versions().iterator();
+            DatastreamVersion dsvA = next(a);
+            DatastreamVersion dsvB = next(b);
+            while (dsvA != null || dsvB != null) {
+                int c = dsvA == null ? 1
+                        : dsvB == null ? -1 : order.compare(dsvA, dsvB);
+                if (c < 0) {
+                    removedVersions.add(
+                            new DatastreamVersion(dsvA.id(), dsvA.createdDate()));
+                    dsvA = next(a);
+                } else if (c > 0) {
+                    addedVersions.add(dsvB.copy());
+                    dsvB = next(b);
+                } else {
+                    if (!dsvA.equals(dsvB)) {
+                        changedVersions.add(dsvB.copy());
+                    }
+                    dsvA = next(a);
+                    dsvB = next(b);
+                }
+            }
+        }
+
+        /**
+         * Gets the id of the datastream.
+         *
+         * @return the value, never <code>null</code>.
+         */
+        public String id() {
+            return id;
+        }
+
+        /**
+         * Gets the datastream's new properties, if any have changed.
+         *
+         * @return a datastream with the new values of all properties and
+         *         no versions, or <code>null</code> if none have changed.
+         */
+        public Datastream properties() {
+            return properties;
+        }
+
+        /**
+         * Gets the versions that were removed. Only their ids and created
+         * dates are given.
+         *
+         * @return the set, in datastream order, possibly empty, never
+         *         <code>null</code>.
+         */
+        public SortedSet<DatastreamVersion> removedVersions() {
+            return removedVersions;
+        }
+
+        /**
+         * Gets the versions that were added.
+         *
+         * @return the set, in datastream order, possibly empty, never
+         *         <code>null</code>.
+         */
+        public SortedSet<DatastreamVersion> addedVersions() {
+            return addedVersions;
+        }
+
+        /**
+         * Gets the new values of versions that were changed.
+         *
+         * @return the set, in datastream order, possibly empty, never
+         *         <code>null</code>.
+         */
+        public SortedSet<DatastreamVersion> changedVersions() {
+            return changedVersions;
+        }
+
+        /**
+         * Applies the changes to the given datastream. Removals of versions
+         * that don't exist are ignored.
+         *
+         * @param ds the datastream to change.
+         * @return the given datastream.
+         */
+        public Datastream applyTo(Datastream ds) {
+            if (properties != null) {
+                ds.state(properties.state())
+                        .controlGroup(properties.controlGroup())
+                        .versionable(properties.versionable());
+            }
+            SortedSet<DatastreamVersion> versions = ds.versions();
+            versions.removeAll(removedVersions);
+            for (DatastreamVersion dsv: changedVersions) {
+                versions.remove(dsv);
+                versions.add(dsv.copy());
+            }
+            for (DatastreamVersion dsv: addedVersions) {
+                versions.add(dsv.copy());
+            }
+            return ds;
+        }
+    }
+
+    private static FedoraObject propertiesOf(FedoraObject obj) {
+        return new FedoraObject()
+                .pid(obj.pid())
+                .state(obj.state())
+                .label(obj.label())
+                .ownerId(obj.ownerId())
+                .createdDate(obj.createdDate())
+                .lastModifiedDate(obj.lastModifiedDate());
+    }
+
+    private static Datastream propertiesOf(Datastream ds) {
+        return new Datastream(ds.id())
+                .state(ds.state())
+                .controlGroup(ds.controlGroup())
+                .versionable(ds.versionable());
+    }
+
+    private static <T> T next(Iterator<T> i) {
+        return i.hasNext() ? i.next() : null;
+    }
+
+}
@@ -0,0 +1,180 @@
+package com.github.cwilper.fcrepo.dto.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * A 128-bit fingerprint of the content of a Fedora DTO, as given by
+ * {@link FedoraObject#fingerprint()}, {@link Datastream#fingerprint()},
+ * and {@link DatastreamVersion#fingerprint()}.
+ * <p>
+ * Fingerprints are MD5 digests, computed Merkle-style: that of an object
+ * covers the fingerprints of its datastreams, which cover those of their
+ * versions, which cover those of their content digests and inline XML. Two
+ * instances that are equal have the same fingerprint, in any process and
+ * any run, so fingerprints may be stored and compared later to tell
+ * whether something has changed. They may differ between releases that
+ * add fields to the DTO classes.
+ * <p>
+ * Instances are immutable.
+ */
+public final class Fingerprint {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // value tags
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int DATE = 2;
+    private static final int FINGERPRINT = 3;
+    private static final int SIZE = 4;
+    private static final int OTHER = 5;
+
+    private final byte[] bytes;
+
+    private Fingerprint(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Gets the fingerprint with the given hex value, as given by
+     * {@link #toString()}.
+     *
+     * @param hexValue thirty-two hex digits.
+     * @return the fingerprint.
+     * @throws IllegalArgumentException if the value isn't thirty-two hex
+     *         digits.
+     */
+    public static Fingerprint valueOf(String hexValue) {
+        if (hexValue.length() != 32) {
+            throw new IllegalArgumentException("Not a fingerprint: "
+                    + hexValue);
+        }
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hexValue.charAt(i * 2), 16);
+            int low = Character.digit(hexValue.charAt(i * 2 + 1), 16);
+            if (high == -1 || low == -1) {
+                throw new IllegalArgumentException("Not a fingerprint: "
+                        + hexValue);
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return new Fingerprint(bytes);
+    }
+
+    /**
+     * Gets the value as bytes.
+     *
+     * @return a copy of the sixteen bytes of the digest.
+     */
+    public byte[] bytes() {
+        return bytes.clone();
+    }
+
+    /**
+     * Tells whether the given object is a fingerprint with the same value.
+     *
+     * @param o the object to compare with this one.
+     * @return true if equal, false otherwise.
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Fingerprint
+                && Arrays.equals(bytes, ((Fingerprint) o).bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16
+                | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff);
+    }
+
+    /**
+     * Gets the value as thirty-two lowercase hex digits.
+     *
+     * @return the value.
+     */
+    @Override
+    public String toString() {
+        char[] chars = new char[32];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    // computes the fingerprint of a value of the given type from its
+    // flattened inputs, as given by FedoraDTO.fingerprintInputs()
+    static Fingerprint of(String type, Object[] inputs) {
+        MessageDigest md5 = newDigest();
+        update(md5, type);
+        for (Object input: inputs) {
+            if (input == null) {
+                md5.update((byte) NULL);
+            } else if (input instanceof String) {
+                md5.update((byte) STRING);
+                update(md5, (String) input);
+            } else if (input instanceof Date) {
+                md5.update((byte) DATE);
+                update(md5, ((Date) input).getTime());
+            } else if (input instanceof Fingerprint) {
+                md5.update((byte) FINGERPRINT);
+                md5.update(((Fingerprint) input).bytes);
+            } else if (input instanceof Integer) {
+                md5.update((byte) SIZE);
+                update(md5, ((Integer) input).longValue());
+            } else {
+                // enums, numbers, booleans, and URIs, by their descriptions
+                md5.update((byte) OTHER);
+                update(md5, input.getClass().getSimpleName());
+                update(md5, input.toString());
+            }
+        }
+        return new Fingerprint(md5.digest());
+    }
+
+    // computes the fingerprint of a value of the given type from its
+    // content, closing the stream
+    static Fingerprint of(String type, InputStream content) throws IOException {
+        MessageDigest md5 = newDigest();
+        update(md5, type);
+        try {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = content.read(buf)) != -1) {
+                md5.update(buf, 0, n);
+            }
+        } finally {
+            content.close();
+        }
+        return new Fingerprint(md5.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not supported", e);
+        }
+    }
+
+    // writes the length-prefixed UTF-8 encoding of the string
+    private static void update(MessageDigest md5, String string) {
+        byte[] encoded = Util.getBytes(string);
+        update(md5, encoded.length);
+        md5.update(encoded);
+    }
+
+    private static void update(MessageDigest md5, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            md5.update((byte) (value >>> shift));
+        }
+    }
+
+}
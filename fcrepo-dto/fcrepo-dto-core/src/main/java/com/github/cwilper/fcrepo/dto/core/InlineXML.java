@@ -1,10 +1,22 @@
 package com.github.cwilper.fcrepo.dto.core;
 
+import com.github.cwilper.fcrepo.dto.core.io.CanonicalizationException;
+import com.github.cwilper.fcrepo.dto.core.io.XMLCanonicalizer;
 import com.github.cwilper.fcrepo.dto.core.io.XMLUtil;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
 
 /**
  * The inline XML content of a {@link DatastreamVersion}.
@@ -32,16 +44,54 @@ import java.io.IOException;
  * </ol>
  * If standard canonicalization (c14n11) is successful at construction time,
  * {@link #canonical()} will always return <code>true</code>.
+ * <p>
+ * <h2>Large Values</h2>
+ * If constructed with a maximum in-memory size, values larger than that will
+ * be kept in a temporary file rather than on the heap. The file is deleted
+ * by {@link #release()}, or otherwise once the instance has been garbage
+ * collected or the JVM exits. For such values, {@link #value()}
+ * and {@link #bytes()} read the file each time they are called, so
+ * {@link #openStream()} or {@link #writeTo(OutputStream)} should be
+ * preferred.
+ * <p>
+ * <h2>Memory Use</h2>
+ * Only the UTF-8 encoded form is kept. The string returned by
+ * {@link #value()} is decoded when first asked for, and is then softly
+ * cached, so it may be reclaimed by the garbage collector under memory
+ * pressure and decoded again later. Equality and hash codes are computed
+ * from the encoded form, without decoding it.
+ * <p>
+ * <h2>Lazy Instances</h2>
+ * Instances created via {@link #lazy(byte[], long)} check that the XML is
+ * well-formed, but keep it as given, and only canonicalize it when the
+ * canonical form is first needed: by {@link #value()}, {@link #bytes()},
+ * {@link #size()}, {@link #openStream()}, {@link #canonical()}, or an
+ * equality test. The result is kept for later calls, and the XML as given
+ * is then released. Until that happens, {@link #writeTo(OutputStream)}
+ * writes the XML as given, so content that is only copied from one place
+ * to another is never canonicalized. Should canonicalization or
+ * normalization still fail, or the temporary file not be writable, these
+ * methods throw <code>IllegalStateException</code>.
  */
 public class InlineXML extends FedoraDTO {
 
     private static final Logger logger =
             LoggerFactory.getLogger(InlineXML.class);
 
-    private final String value;
+    private final long maxInMemorySize;
 
+    // the xml as given to a lazy instance, until it's resolved
+    private volatile byte[] original;
+
+    private volatile boolean resolved;
+    private volatile SoftReference<String> value;
+    private File file;
+    private TempFileCleaner.Cleanup cleanup;
+    private long size;
     private byte[] bytes;
     private boolean canonical;
+    private int hash;
+    private volatile Fingerprint fingerprint;
 
     /**
      * Creates an instance from a string.
@@ -62,18 +112,115 @@ public class InlineXML extends FedoraDTO {
      *         XML document or cannot be decoded as UTF-8.
      */
     public InlineXML(byte[] bytes) throws IOException {
-        // verify it's well-formed first; canonicalization doesn't
-        byte[] normalized = XMLUtil.prettyPrint(bytes, true);
-        // try to canonicalize, otherwise, use normalized form
+        this(bytes, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates an instance from a UTF-8 encoded byte array, keeping it in a
+     * temporary file if its canonical (or normalized) form is larger than
+     * the given size.
+     *
+     * @param bytes a well-formed, standalone XML document.
+     * @param maxInMemorySize the maximum size, in bytes, to keep on the heap.
+     * @throws IOException if the value is not a well-formed, standalone
+     *         XML document or cannot be decoded as UTF-8, or the temporary
+     *         file can't be written.
+     */
+    public InlineXML(byte[] bytes, long maxInMemorySize) throws IOException {
+        this.maxInMemorySize = maxInMemorySize;
+        resolve(bytes);
+    }
+
+    // creates a lazy instance
+    private InlineXML(byte[] original, long maxInMemorySize, boolean lazy) {
+        this.original = original;
+        this.maxInMemorySize = maxInMemorySize;
+    }
+
+    /**
+     * Creates a lazy instance from a UTF-8 encoded byte array, which is
+     * checked for well-formedness, but not canonicalized until the
+     * canonical form is needed.
+     * <p>
+     * XML that can't be embedded in another document exactly as given,
+     * because it has an XML declaration, DOCTYPE declaration, or comments,
+     * is canonicalized right away instead, so that
+     * {@link #writeTo(OutputStream)} always writes embeddable XML.
+     *
+     * @param bytes a well-formed, standalone XML document. It must not be
+     *        changed afterward.
+     * @param maxInMemorySize the maximum size, in bytes, of the canonical
+     *        (or normalized) form to keep on the heap.
+     * @return the instance.
+     * @throws IOException if the value is not a well-formed, standalone
+     *         XML document, or it is canonicalized right away and the
+     *         temporary file can't be written.
+     */
+    public static InlineXML lazy(byte[] bytes, long maxInMemorySize)
+            throws IOException {
+        if (bytes == null) throw new NullPointerException();
+        if (!XMLCanonicalizer.check(bytes)) {
+            return new InlineXML(bytes, maxInMemorySize);
+        }
+        return new InlineXML(bytes, maxInMemorySize, true);
+    }
+
+    // sets the canonical (or normalized) form of the given xml
+    private void resolve(byte[] bytes) throws IOException {
+        // canonicalize, checking it's well-formed in the same pass, and
+        // only if that's impossible, use normalized form. Either way, the
+        // output goes straight to a temporary file once it passes the
+        // maximum in-memory size.
+        DeferredFileOutputStream sink = newSink();
+        boolean written = false;
         try {
-            this.bytes = XMLUtil.canonicalize(bytes);
-            this.canonical = true;
-        } catch (IOException e) {
-            logger.debug("Unable to canonicalize (c14n11); using non-standard "
-                    + "normalization instead", e);
-            this.bytes = normalized;
+            try {
+                XMLCanonicalizer.canonicalize(
+                        new ByteArrayInputStream(bytes), sink);
+                this.canonical = true;
+            } catch (CanonicalizationException e) {
+                logger.debug("Unable to canonicalize (c14n11); using "
+                        + "non-standard normalization instead", e);
+                discard(sink);
+                sink = newSink();
+                XMLUtil.prettyPrint(new ByteArrayInputStream(bytes), sink,
+                        true);
+            }
+            sink.close();
+            written = true;
+        } finally {
+            if (!written) discard(sink);
+        }
+        this.size = sink.getByteCount();
+        if (sink.isInMemory()) {
+            this.bytes = sink.getData();
+        } else {
+            this.file = sink.getFile();
+            this.cleanup = TempFileCleaner.register(this, file);
+        }
+        resolved = true;
+    }
+
+    // a stream that switches to a temporary file past the in-memory limit
+    private DeferredFileOutputStream newSink() {
+        int threshold = (int) Math.min(maxInMemorySize, Integer.MAX_VALUE);
+        return new DeferredFileOutputStream(threshold, "fcrepo-dto", ".xml",
+                null);
+    }
+
+    // computes the canonical form of a lazy instance, if not already done
+    private void resolve() {
+        if (resolved) return;
+        synchronized (this) {
+            if (resolved) return;
+            try {
+                resolve(original);
+                original = null;
+            } catch (IOException e) {
+                throw new IllegalStateException("Inline XML could not be "
+                        + "canonicalized or normalized", e);
+            }
         }
-        this.value = Util.getString(this.bytes);
     }
 
     /**
@@ -82,7 +229,15 @@ public class InlineXML extends FedoraDTO {
      * @return the value, never <code>null</code>.
      */
     public String value() {
-        return value;
+        resolve();
+        if (file != null) return Util.getString(readFile());
+        SoftReference<String> ref = value;
+        String string = ref == null ? null : ref.get();
+        if (string == null) {
+            string = Util.getString(bytes);
+            value = new SoftReference<String>(string);
+        }
+        return string;
     }
 
     /**
@@ -91,7 +246,62 @@ public class InlineXML extends FedoraDTO {
      * @return the value, never <code>null</code>.
      */
     public byte[] bytes() {
-        return bytes;
+        resolve();
+        if (file == null) return bytes;
+        return readFile();
+    }
+
+    /**
+     * Gets the size of the canonicalized (or normalized) XML.
+     *
+     * @return the number of bytes in its UTF-8 encoded form.
+     */
+    public long size() {
+        resolve();
+        return size;
+    }
+
+    /**
+     * Gets a stream for reading the canonicalized (or normalized) XML.
+     *
+     * @return a stream of the UTF-8 encoded XML, to be closed by the caller.
+     * @throws IOException if the temporary file can't be opened.
+     */
+    public InputStream openStream() throws IOException {
+        resolve();
+        if (file == null) return new ByteArrayInputStream(bytes);
+        return new FileInputStream(file);
+    }
+
+    /**
+     * Writes the canonicalized (or normalized) XML to the given stream, or
+     * for lazy instances that haven't been canonicalized yet, the XML as
+     * given.
+     *
+     * @param sink the stream to write the UTF-8 encoded XML to. It will be
+     *        left open.
+     * @throws IOException if writing fails.
+     */
+    public void writeTo(OutputStream sink) throws IOException {
+        byte[] unresolved = original;
+        if (unresolved != null) {
+            sink.write(unresolved);
+        } else if (file == null) {
+            sink.write(bytes);
+        } else {
+            InputStream source = openStream();
+            try {
+                IOUtils.copy(source, sink);
+            } finally {
+                IOUtils.closeQuietly(source);
+            }
+        }
+    }
+
+    // the temporary file, if the value was too large to keep on the heap
+    File file() {
+        resolve();
+        return file;
     }
 
     /**
@@ -103,12 +313,93 @@ public class InlineXML extends FedoraDTO {
      *         described above.
      */
     public boolean canonical() {
+        resolve();
         return canonical;
     }
 
+    /**
+     * Tells whether the given object is an <code>InlineXML</code> instance
+     * with the same canonicalized (or normalized) XML, comparing the
+     * encoded forms.
+     *
+     * @param o the object to compare with this one.
+     * @return true if equal, false otherwise.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (!(o instanceof InlineXML)) return false;
+        InlineXML other = (InlineXML) o;
+        return size() == other.size() && hashCode() == other.hashCode()
+                && Arrays.equals(bytes(), other.bytes());
+    }
+
+    /**
+     * Gets the hash code of the encoded form of the canonicalized (or
+     * normalized) XML, computing it on first use.
+     *
+     * @return the hash code.
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = Arrays.hashCode(bytes());
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * Gets a fingerprint of the canonicalized (or normalized) XML,
+     * computing it on first use.
+     *
+     * @return the fingerprint.
+     */
+    @Override
+    public Fingerprint fingerprint() {
+        Fingerprint f = fingerprint;
+        if (f == null) {
+            try {
+                f = Fingerprint.of(getClass().getSimpleName(), openStream());
+            } catch (IOException e) {
+                throw new RuntimeException("Can't read temp file " + file, e);
+            }
+            fingerprint = f;
+        }
+        return f;
+    }
+
     @Override
     protected Object[] getEqArray() {
-        return new Object[] { value };
+        return new Object[] { value() };
+    }
+
+    /**
+     * Deletes the temporary file, if the value was too large to keep on the
+     * heap, without waiting for the instance to be garbage collected. The
+     * instance must not be used afterward, so instances shared via an
+     * {@link InlineXMLCache} should not be released.
+     */
+    public synchronized void release() {
+        if (cleanup != null) cleanup.clean();
+    }
+
+    // closes the stream and deletes its temporary file, if any
+    private static void discard(DeferredFileOutputStream sink) {
+        IOUtils.closeQuietly(sink);
+        File file = sink.getFile();
+        if (file != null && !file.delete() && file.exists()) {
+            logger.warn("Can't delete temp file " + file);
+        }
+    }
+
+    private byte[] readFile() {
+        try {
+            return FileUtils.readFileToByteArray(file);
+        } catch (IOException e) {
+            throw new RuntimeException("Can't read temp file " + file, e);
+        }
     }
 
 }
@@ -0,0 +1,229 @@
+package com.github.cwilper.fcrepo.dto.core;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shares {@link InlineXML} instances among identical inline XML values, so
+ * that content which recurs across many objects, such as boilerplate
+ * Dublin Core or template RELS-EXT, is canonicalized and held on the heap
+ * only once.
+ * <p>
+ * Values are identified by the SHA-256 digest of the XML as given, before
+ * canonicalization. The cache holds a bounded number of values, evicting
+ * the least recently used ones once it is full. Values too large to keep
+ * on the heap (see {@link InlineXML#InlineXML(byte[], long)}) are never
+ * cached.
+ * <p>
+ * Instances are thread-safe. Entries are spread across several
+ * independently locked segments, so callers in different threads rarely
+ * contend for the same lock.
+ */
+public class InlineXMLCache {
+
+    /** 1024 */
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+
+    /**
+     * Creates an instance that holds up to {@link #DEFAULT_MAX_ENTRIES}
+     * values.
+     */
+    public InlineXMLCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Creates an instance that holds up to the given number of values.
+     *
+     * @param maxEntries the maximum number of values to hold.
+     * @throws IllegalArgumentException if the value is less than one.
+     */
+    public InlineXMLCache(int maxEntries) {
+        if (maxEntries < 1) throw new IllegalArgumentException();
+        int count = maxEntries < SEGMENTS ? 1 : SEGMENTS;
+        segments = new Segment[count];
+        // spread any remainder over the first segments, so the total
+        // capacity is exactly as given
+        for (int i = 0; i < count; i++) {
+            int extra = i < maxEntries % count ? 1 : 0;
+            segments[i] = new Segment(maxEntries / count + extra);
+        }
+    }
+
+    /**
+     * Gets the shared instance for the given XML, creating it if it is not
+     * already cached.
+     *
+     * @param bytes a well-formed, standalone, UTF-8 encoded XML document.
+     * @return the instance.
+     * @throws IOException if the value is not a well-formed, standalone
+     *         XML document.
+     * @see InlineXML#InlineXML(byte[])
+     */
+    public InlineXML get(byte[] bytes) throws IOException {
+        return get(bytes, Long.MAX_VALUE);
+    }
+
+    /**
+     * Gets the shared instance for the given XML, creating it if it is not
+     * already cached.
+     *
+     * @param bytes a well-formed, standalone, UTF-8 encoded XML document.
+     * @param maxInMemorySize the maximum size, in bytes, to keep on the
+     *        heap. Larger values are created as usual, but not cached.
+     * @return the instance.
+     * @throws IOException if the value is not a well-formed, standalone
+     *         XML document, or the temporary file can't be written.
+     * @see InlineXML#InlineXML(byte[], long)
+     */
+    public InlineXML get(byte[] bytes, long maxInMemorySize)
+            throws IOException {
+        Key key = new Key(digest(bytes));
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            InlineXML existing = segment.get(key);
+            if (existing != null) return existing;
+        }
+        // canonicalize outside the lock, then prefer any instance another
+        // thread cached meanwhile, so all callers share the same one
+        InlineXML xml = new InlineXML(bytes, maxInMemorySize);
+        if (xml.file() != null) return xml;
+        synchronized (segment) {
+            InlineXML existing = segment.get(key);
+            if (existing != null) return existing;
+            segment.put(key, xml);
+        }
+        return xml;
+    }
+
+    /**
+     * Gets the shared instance for the given XML, creating a
+     * {@link InlineXML#lazy(byte[], long) lazy} instance if it is not
+     * already cached. Since values are identified by the XML as given, no
+     * canonicalization is needed to find a cached instance.
+     *
+     * @param bytes a well-formed, standalone, UTF-8 encoded XML document.
+     *        It must not be changed afterward.
+     * @param maxInMemorySize the maximum size, in bytes, to keep on the
+     *        heap. Values larger than this are created as usual, but not
+     *        cached.
+     * @return the instance.
+     * @throws IOException if the value is not a well-formed, standalone
+     *         XML document, or the temporary file can't be written.
+     */
+    public InlineXML getLazy(byte[] bytes, long maxInMemorySize)
+            throws IOException {
+        Key key = new Key(digest(bytes));
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            InlineXML existing = segment.get(key);
+            if (existing != null) return existing;
+        }
+        // check outside the lock, as in get(byte[], long)
+        InlineXML xml = InlineXML.lazy(bytes, maxInMemorySize);
+        if (bytes.length > maxInMemorySize) return xml;
+        synchronized (segment) {
+            InlineXML existing = segment.get(key);
+            if (existing != null) return existing;
+            segment.put(key, xml);
+        }
+        return xml;
+    }
+
+    /**
+     * Gets the number of values currently cached.
+     *
+     * @return the number.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment: segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes all values from the cache.
+     */
+    public void clear() {
+        for (Segment segment: segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    // the maximum number of values held across all segments
+    int capacity() {
+        int capacity = 0;
+        for (Segment segment: segments) {
+            capacity += segment.maxEntries;
+        }
+        return capacity;
+    }
+
+    private Segment segmentFor(Key key) {
+        return segments[(key.hash & 0x7fffffff) % segments.length];
+    }
+
+    private static byte[] digest(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not supported", e);
+        }
+    }
+
+    // a digest, hashed by its leading bytes
+    private static class Key {
+
+        private final byte[] digest;
+        private final int hash;
+
+        Key(byte[] digest) {
+            this.digest = digest;
+            this.hash = (digest[0] & 0xff) << 24 | (digest[1] & 0xff) << 16
+                    | (digest[2] & 0xff) << 8 | (digest[3] & 0xff);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(digest, ((Key) o).digest);
+        }
+    }
+
+    // an access-ordered map that drops its eldest entry when full
+    private static class Segment extends LinkedHashMap<Key, InlineXML> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        Segment(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, InlineXML> eldest) {
+            return size() > maxEntries;
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.github.cwilper.fcrepo.dto.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Deletes temporary files once the objects that own them have been garbage
+ * collected, or when the JVM exits, whichever comes first.
+ * <p>
+ * No thread is needed: files whose owners have been collected are deleted
+ * whenever another file is registered.
+ */
+final class TempFileCleaner {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(TempFileCleaner.class);
+
+    private static final ReferenceQueue<Object> queue =
+            new ReferenceQueue<Object>();
+
+    // keeps the references reachable until their files are deleted
+    private static final Set<Cleanup> pending = new HashSet<Cleanup>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(
+                new Thread("fcrepo-dto temp file cleaner") {
+            @Override
+            public void run() {
+                List<Cleanup> remaining;
+                synchronized (pending) {
+                    remaining = new ArrayList<Cleanup>(pending);
+                }
+                for (Cleanup cleanup: remaining) {
+                    cleanup.clean();
+                }
+            }
+        });
+    }
+
+    private TempFileCleaner() { }
+
+    /**
+     * Arranges for the given file to be deleted once the given object has
+     * been garbage collected.
+     *
+     * @param owner the object that uses the file.
+     * @param file the file.
+     * @return the cleanup, which may be used to delete the file sooner.
+     */
+    static Cleanup register(Object owner, File file) {
+        expunge();
+        Cleanup cleanup = new Cleanup(owner, file);
+        synchronized (pending) {
+            pending.add(cleanup);
+        }
+        return cleanup;
+    }
+
+    // deletes the files of owners that have been collected
+    private static void expunge() {
+        Reference<?> ref;
+        while ((ref = queue.poll()) != null) {
+            ((Cleanup) ref).clean();
+        }
+    }
+
+    /**
+     * The pending deletion of a registered file.
+     */
+    static final class Cleanup extends PhantomReference<Object> {
+
+        private final File file;
+
+        private Cleanup(Object owner, File file) {
+            super(owner, queue);
+            this.file = file;
+        }
+
+        /**
+         * Deletes the file, if it hasn't already been deleted.
+         */
+        void clean() {
+            boolean owned;
+            synchronized (pending) {
+                owned = pending.remove(this);
+            }
+            if (owned) {
+                clear();
+                if (!file.delete() && file.exists()) {
+                    logger.warn("Can't delete temp file " + file);
+                }
+            }
+        }
+    }
+
+}
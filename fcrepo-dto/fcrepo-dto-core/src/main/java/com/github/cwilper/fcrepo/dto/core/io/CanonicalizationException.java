@@ -0,0 +1,22 @@
+package com.github.cwilper.fcrepo.dto.core.io;
+
+import java.io.IOException;
+
+/**
+ * Signals that well-formed XML could not be canonicalized, for instance
+ * because it declares a namespace with a relative URI.
+ */
+public class CanonicalizationException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Creates an instance.
+     *
+     * @param message the detail message.
+     */
+    public CanonicalizationException(String message) {
+        super(message);
+    }
+
+}
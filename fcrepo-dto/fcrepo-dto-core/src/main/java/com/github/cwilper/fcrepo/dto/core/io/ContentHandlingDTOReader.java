@@ -1,6 +1,11 @@
 package com.github.cwilper.fcrepo.dto.core.io;
 
+import com.github.cwilper.fcrepo.dto.core.FedoraObject;
+
 import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 
 /**
  * Base class for {@link DTOReader} implementations capable of handling
@@ -37,6 +42,7 @@ public abstract class ContentHandlingDTOReader implements DTOReader {
                 && this.contentHandler == defaultContentHandler) {
             defaultContentHandler.close();
         }
+        this.contentHandler = contentHandler;
     }
 
     /**
@@ -48,6 +54,20 @@ public abstract class ContentHandlingDTOReader implements DTOReader {
         return contentHandler;
     }
 
+    /**
+     * Reads an object from the given file. This implementation reads it
+     * through a stream; subclasses may read files more efficiently.
+     *
+     * @param file the file to read from.
+     * @return a new <code>FedoraObject</code> based on the content of the
+     *         file.
+     * @throws IOException if the file cannot be opened or deserialized for
+     *         any reason.
+     */
+    public FedoraObject readObject(File file) throws IOException {
+        return readObject(new FileInputStream(file));
+    }
+
     @Override
     @PreDestroy
     public void close() {
@@ -36,7 +36,7 @@ public abstract class ContentResolvingDTOWriter implements DTOWriter {
                 && this.contentResolver == defaultContentResolver) {
             defaultContentResolver.close();
         }
-        
+        this.contentResolver = contentResolver;
     }
 
     /**
@@ -0,0 +1,63 @@
+package com.github.cwilper.fcrepo.dto.core.io;
+
+import com.github.cwilper.fcrepo.dto.core.Datastream;
+import com.github.cwilper.fcrepo.dto.core.DatastreamVersion;
+import com.github.cwilper.fcrepo.dto.core.FedoraObject;
+
+import java.io.IOException;
+
+/**
+ * Callback interface used to receive the parts of a {@link FedoraObject} as
+ * they are read from a stream, without the whole object being held in
+ * memory at once.
+ * <p>
+ * Callbacks are made in document order. The instances passed to the visitor
+ * are not attached to one another by the reader: the object's datastream map
+ * and each datastream's version set will be empty unless the visitor itself
+ * adds to them.
+ * <p>
+ * Inline XML content is available via {@link DatastreamVersion#inlineXML()}
+ * when the version is visited. Binary content is given to the reader's
+ * {@link ContentHandler} before the version is visited, so any content
+ * location it assigns will also be visible at that time.
+ */
+public interface DTOVisitor {
+
+    /**
+     * Visits the object once its pid and properties have been read.
+     *
+     * @param obj the object, with no datastreams.
+     * @throws IOException if the visitor wishes to abort reading.
+     */
+    void visitObject(FedoraObject obj) throws IOException;
+
+    /**
+     * Visits a datastream once its attributes have been read.
+     *
+     * @param obj the object containing the datastream.
+     * @param ds the datastream, with no versions.
+     * @throws IOException if the visitor wishes to abort reading.
+     */
+    void visitDatastream(FedoraObject obj, Datastream ds) throws IOException;
+
+    /**
+     * Visits a datastream version once it has been completely read.
+     *
+     * @param obj the object containing the datastream.
+     * @param ds the datastream containing the version.
+     * @param dsv the datastream version.
+     * @throws IOException if the visitor wishes to abort reading.
+     */
+    void visitDatastreamVersion(FedoraObject obj,
+                                Datastream ds,
+                                DatastreamVersion dsv) throws IOException;
+
+    /**
+     * Signals that the last datastream of the object has been visited.
+     *
+     * @param obj the object.
+     * @throws IOException if the visitor wishes to abort reading.
+     */
+    void endObject(FedoraObject obj) throws IOException;
+
+}
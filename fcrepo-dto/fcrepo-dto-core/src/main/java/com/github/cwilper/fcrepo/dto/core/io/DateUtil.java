@@ -1,13 +1,19 @@
 package com.github.cwilper.fcrepo.dto.core.io;
 
 import java.text.DateFormat;
-import java.text.ParseException;
+import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.TimeZone;
 
 /**
  * Date-related utility methods.
+ * <p>
+ * Dates in the allowed formats are parsed and formatted directly, without
+ * <code>SimpleDateFormat</code>. Unusual values (for instance, those with
+ * out-of-range fields, trailing text, or years before the Gregorian
+ * cutover) are handed to <code>SimpleDateFormat</code>, so results are the
+ * same as if it had been used for all values. All methods are thread-safe.
  */
 public final class DateUtil {
 
@@ -33,6 +39,26 @@ public final class DateUtil {
             "yyyy-MM-dd'T'HH:mm:ss"
     };
 
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    // the first year handled directly; earlier ones are affected by
+    // SimpleDateFormat's Julian calendar cutover
+    private static final int MIN_YEAR = 1583;
+
+    // 1583-01-01T00:00:00.000Z and 10000-01-01T00:00:00.000Z
+    private static final long MIN_TIME = daysFromCivil(MIN_YEAR, 1, 1)
+            * MILLIS_PER_DAY;
+    private static final long MAX_TIME = daysFromCivil(10000, 1, 1)
+            * MILLIS_PER_DAY;
+
+    private static final int[] DAYS_IN_MONTH = new int[] {
+            31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31 };
+
+    // recently formatted values, indexed by a hash of their time
+    private static final int CACHE_SIZE = 256;
+    private static final FormattedDate[] cache =
+            new FormattedDate[CACHE_SIZE];
+
     /**
      * Gets a UTC <code>Date</code> from a UTC ISO-8601 <code>String</code>.
      * <p>
@@ -47,14 +73,15 @@ public final class DateUtil {
      */
     public static Date toDate(String dateString) {
         if (dateString == null) return null;
+        long time = parse(dateString);
+        if (time != Long.MIN_VALUE) return new Date(time);
         SimpleDateFormat dateFormat = new SimpleDateFormat();
         dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
         for (String format: ALLOWED_DATE_FORMATS) {
             dateFormat.applyPattern(format);
-            try {
-                return dateFormat.parse(dateString);
-            } catch (ParseException e) {
-            }
+            // the ParsePosition variant signals failure without throwing
+            Date date = dateFormat.parse(dateString, new ParsePosition(0));
+            if (date != null) return date;
         }
         return null;
     }
@@ -70,9 +97,149 @@ public final class DateUtil {
      */
     public static String toString(Date date) {
         if (date == null) return null;
-        DateFormat dateFormat = new SimpleDateFormat(PREFERRED_DATE_FORMAT);
-        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-        return dateFormat.format(date);
+        long time = date.getTime();
+        if (time < MIN_TIME || time >= MAX_TIME) {
+            DateFormat dateFormat = new SimpleDateFormat(PREFERRED_DATE_FORMAT);
+            dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return dateFormat.format(date);
+        }
+        int index = (int) (time ^ (time >>> 17)) & (CACHE_SIZE - 1);
+        FormattedDate cached = cache[index];
+        if (cached != null && cached.time == time) return cached.value;
+        String value = format(time);
+        cache[index] = new FormattedDate(time, value);
+        return value;
+    }
+
+    // parses yyyy-MM-ddTHH:mm:ss, optionally followed by 1-3 fractional
+    // digits and/or Z, returning Long.MIN_VALUE if the string is in any
+    // other form or has out-of-range fields
+    private static long parse(String s) {
+        int len = s.length();
+        if (len < 19 || s.charAt(4) != '-' || s.charAt(7) != '-'
+                || s.charAt(10) != 'T' || s.charAt(13) != ':'
+                || s.charAt(16) != ':') {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 2);
+        int day = digits(s, 8, 2);
+        int hour = digits(s, 11, 2);
+        int minute = digits(s, 14, 2);
+        int second = digits(s, 17, 2);
+        if (year < MIN_YEAR || month < 1 || month > 12 || day < 1
+                || day > daysInMonth(year, month) || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return Long.MIN_VALUE;
+        }
+        int millis = 0;
+        int i = 19;
+        if (i < len && s.charAt(i) == '.') {
+            int start = ++i;
+            while (i < len && i - start < 4 && isDigit(s.charAt(i))) i++;
+            int n = i - start;
+            if (n < 1 || n > 3) return Long.MIN_VALUE;
+            // like SimpleDateFormat, take the digits as a count of
+            // milliseconds rather than a decimal fraction
+            millis = digits(s, start, n);
+        }
+        if (i < len && s.charAt(i) == 'Z') i++;
+        if (i != len) return Long.MIN_VALUE;
+        return daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + ((hour * 60L + minute) * 60 + second) * 1000 + millis;
+    }
+
+    // formats a time in [MIN_TIME, MAX_TIME) in the preferred format
+    private static String format(long time) {
+        long days = floorDiv(time, MILLIS_PER_DAY);
+        int millisOfDay = (int) (time - days * MILLIS_PER_DAY);
+        // civil from days, per Howard Hinnant's algorithm
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        int doe = (int) (z - era * 146097);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = (int) (yoe + era * 400) + (month <= 2 ? 1 : 0);
+        char[] c = new char[24];
+        put(c, 0, year, 4);
+        c[4] = '-';
+        put(c, 5, month, 2);
+        c[7] = '-';
+        put(c, 8, day, 2);
+        c[10] = 'T';
+        put(c, 11, millisOfDay / 3600000, 2);
+        c[13] = ':';
+        put(c, 14, millisOfDay / 60000 % 60, 2);
+        c[16] = ':';
+        put(c, 17, millisOfDay / 1000 % 60, 2);
+        c[19] = '.';
+        put(c, 20, millisOfDay % 1000, 3);
+        c[23] = 'Z';
+        return new String(c);
+    }
+
+    // days since 1970-01-01 of a proleptic Gregorian date, per Howard
+    // Hinnant's algorithm
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5
+                + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2 && (year % 4 == 0
+                && (year % 100 != 0 || year % 400 == 0))) {
+            return 29;
+        }
+        return DAYS_IN_MONTH[month - 1];
+    }
+
+    // parses n ascii digits, returning -1 if any aren't digits
+    private static int digits(String s, int start, int n) {
+        int value = 0;
+        for (int i = start; i < start + n; i++) {
+            char c = s.charAt(i);
+            if (!isDigit(c)) return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // writes a non-negative value as n zero-padded digits
+    private static void put(char[] c, int start, int value, int n) {
+        for (int i = start + n - 1; i >= start; i--) {
+            c[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        if ((x % y != 0) && ((x < 0) != (y < 0))) q--;
+        return q;
+    }
+
+    // an immutable cache entry, safe to publish without synchronization
+    private static class FormattedDate {
+
+        final long time;
+        final String value;
+
+        FormattedDate(long time, String value) {
+            this.time = time;
+            this.value = value;
+        }
     }
 
 }
@@ -30,6 +30,8 @@ import java.io.OutputStream;
  * Content that is written will be automatically deleted when the handler
  * is {@link #close()}d, unless {@link #setAutoDelete(boolean)} is called
  * beforehand.
+ * <p>
+ * This class is thread-safe.
  */
 public class DefaultContentHandler implements ContentHandler {
 
@@ -56,7 +58,7 @@ public class DefaultContentHandler implements ContentHandler {
      * @param baseDir the new value, never <code>null</code>.
      * @throws NullPointerException if the value is null.
      */
-    public void setBaseDir(File baseDir) {
+    public synchronized void setBaseDir(File baseDir) {
         if (this.baseDir != null && this.baseDir != baseDir && autoDelete) {
             rmDir(this.baseDir);
         }
@@ -69,7 +71,7 @@ public class DefaultContentHandler implements ContentHandler {
      *
      * @param autoDelete the new value.
      */
-    public void setAutoDelete(boolean autoDelete) {
+    public synchronized void setAutoDelete(boolean autoDelete) {
         this.autoDelete = autoDelete;
     }
 
@@ -79,7 +81,8 @@ public class DefaultContentHandler implements ContentHandler {
                                       DatastreamVersion dsv)
             throws IOException {
         File file = new File(baseDir(), getPath(obj, ds, dsv));
-        if (!file.getParentFile().mkdirs()) {
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
             throw new IOException("Can't create parent dir of " + file);
         }
         OutputStream sink = new FileOutputStream(file);
@@ -109,7 +112,7 @@ public class DefaultContentHandler implements ContentHandler {
     }
 
     // allocates the temporary base directory lazily
-    private File baseDir() throws IOException {
+    private synchronized File baseDir() throws IOException {
         if (baseDir == null) {
             baseDir = File.createTempFile("fcrepo-dto", null);
             if (!baseDir.delete()) {
@@ -124,7 +127,7 @@ public class DefaultContentHandler implements ContentHandler {
 
     @Override
     @PreDestroy
-    public void close() {
+    public synchronized void close() {
         if (baseDir != null && autoDelete) {
             rmDir(baseDir);
         }
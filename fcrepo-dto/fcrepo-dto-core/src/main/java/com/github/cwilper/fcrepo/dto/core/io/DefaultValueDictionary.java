@@ -0,0 +1,122 @@
+package com.github.cwilper.fcrepo.dto.core.io;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link ValueDictionary} that holds a bounded number of values, evicting
+ * the least recently used ones once it is full.
+ * <p>
+ * Entries are spread across several independently locked segments, so
+ * readers in different threads rarely contend for the same lock.
+ */
+public class DefaultValueDictionary implements ValueDictionary {
+
+    /** 4096 */
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment<String>[] strings;
+    private final Segment<URI>[] uris;
+
+    /**
+     * Creates an instance that holds up to {@link #DEFAULT_MAX_ENTRIES}
+     * strings and as many URIs.
+     */
+    public DefaultValueDictionary() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Creates an instance that holds up to the given number of strings and
+     * as many URIs.
+     *
+     * @param maxEntries the maximum number of each kind of value to hold.
+     * @throws IllegalArgumentException if the value is less than one.
+     */
+    public DefaultValueDictionary(int maxEntries) {
+        if (maxEntries < 1) throw new IllegalArgumentException();
+        strings = newSegments(maxEntries);
+        uris = newSegments(maxEntries);
+    }
+
+    @Override
+    public String getString(String value) {
+        if (value == null) return null;
+        Segment<String> segment = segmentFor(strings, value);
+        synchronized (segment) {
+            String existing = segment.get(value);
+            if (existing != null) return existing;
+            segment.put(value, value);
+            return value;
+        }
+    }
+
+    @Override
+    public URI getURI(String value) throws URISyntaxException {
+        if (value == null) return null;
+        Segment<URI> segment = segmentFor(uris, value);
+        synchronized (segment) {
+            URI existing = segment.get(value);
+            if (existing != null) return existing;
+        }
+        // parse outside the lock; a concurrent duplicate is harmless
+        URI uri = new URI(value);
+        synchronized (segment) {
+            segment.put(value, uri);
+        }
+        return uri;
+    }
+
+    // the maximum number of strings held across all segments, which is
+    // also that of URIs
+    int capacity() {
+        int capacity = 0;
+        for (Segment<String> segment: strings) {
+            capacity += segment.maxEntries;
+        }
+        return capacity;
+    }
+
+    // segments holding exactly the given number of entries in total, with
+    // any remainder spread over the first ones
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> Segment<T>[] newSegments(int maxEntries) {
+        int count = maxEntries < SEGMENTS ? 1 : SEGMENTS;
+        Segment<T>[] segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            int extra = i < maxEntries % count ? 1 : 0;
+            segments[i] = new Segment<T>(maxEntries / count + extra);
+        }
+        return segments;
+    }
+
+    private static <T> Segment<T> segmentFor(Segment<T>[] segments,
+                                             String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+    // an access-ordered map that drops its eldest entry when full
+    private static class Segment<T> extends LinkedHashMap<String, T> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        Segment(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+            return size() > maxEntries;
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.github.cwilper.fcrepo.dto.core.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+/**
+ * An <code>InputStream</code> that reads a file by memory-mapping it,
+ * one window at a time, so that files of any size (including those over
+ * 2GB) can be read without copying them through an intermediate buffer.
+ * <p>
+ * Reading starts at the channel's position when the stream is created.
+ * Closing the stream closes the channel.
+ */
+public class MappedInputStream extends InputStream {
+
+    /** 262144 (256KB) */
+    public static final long DEFAULT_MAP_THRESHOLD = 256 * 1024;
+
+    /** 67108864 (64MB) */
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final int windowSize;
+    private final long size;
+
+    private MappedByteBuffer window;
+    private long position;
+
+    /**
+     * Creates an instance with the default window size.
+     *
+     * @param channel the channel to read from, never <code>null</code>.
+     * @throws IOException if the channel's size or position can't be read.
+     */
+    public MappedInputStream(FileChannel channel) throws IOException {
+        this(channel, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Creates an instance with the given window size.
+     *
+     * @param channel the channel to read from, never <code>null</code>.
+     * @param windowSize the maximum number of bytes to map at once.
+     * @throws IOException if the channel's size or position can't be read.
+     * @throws IllegalArgumentException if the window size is less than one.
+     */
+    public MappedInputStream(FileChannel channel, int windowSize)
+            throws IOException {
+        if (windowSize < 1) throw new IllegalArgumentException();
+        this.channel = channel;
+        this.windowSize = windowSize;
+        this.size = channel.size();
+        this.position = channel.position();
+    }
+
+    /**
+     * Gets a stream for reading the given channel from its current position,
+     * memory-mapping it only if the amount to be read is at least
+     * {@link #DEFAULT_MAP_THRESHOLD}. Mapping has a fixed setup cost that
+     * makes ordinary reads faster for small files.
+     *
+     * @param channel the channel to read from, never <code>null</code>.
+     * @return a stream that will close the channel when it is closed.
+     * @throws IOException if the channel's size or position can't be read.
+     */
+    public static InputStream open(FileChannel channel) throws IOException {
+        if (channel.size() - channel.position() < DEFAULT_MAP_THRESHOLD) {
+            return Channels.newInputStream(channel);
+        }
+        return new MappedInputStream(channel);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!hasRemaining()) return -1;
+        return window.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) return 0;
+        if (!hasRemaining()) return -1;
+        int n = Math.min(len, window.remaining());
+        window.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) return 0;
+        long skipped = 0;
+        if (window != null) {
+            skipped = Math.min(n, window.remaining());
+            window.position(window.position() + (int) skipped);
+        }
+        long jump = Math.min(n - skipped, size - position);
+        if (jump > 0) {
+            // don't map what's being skipped over
+            window = null;
+            position += jump;
+            skipped += jump;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        long available = size - position;
+        if (window != null) available += window.remaining();
+        return (int) Math.min(Integer.MAX_VALUE, available);
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    // maps the next window if the current one has been used up
+    private boolean hasRemaining() throws IOException {
+        if (window != null && window.hasRemaining()) return true;
+        if (position >= size) return false;
+        long length = Math.min(windowSize, size - position);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        position += length;
+        return true;
+    }
+
+}
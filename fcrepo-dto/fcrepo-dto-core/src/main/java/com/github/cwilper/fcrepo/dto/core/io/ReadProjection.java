@@ -0,0 +1,159 @@
+package com.github.cwilper.fcrepo.dto.core.io;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Specifies which parts of an object a {@link DTOReader} should read.
+ * Parts that are not included are skipped while parsing, so no work is
+ * done to deserialize, decode, or store them.
+ * <p>
+ * By default, all parts are read.
+ */
+public class ReadProjection {
+
+    /** true */
+    public static final boolean DEFAULT_INLINE_XML = true;
+
+    /** true */
+    public static final boolean DEFAULT_BINARY_CONTENT = true;
+
+    /** false */
+    public static final boolean DEFAULT_LATEST_VERSION_ONLY = false;
+
+    private Set<String> datastreamIds;
+    private boolean inlineXML;
+    private boolean binaryContent;
+    private boolean latestVersionOnly;
+
+    /**
+     * Constructs a <code>ReadProjection</code> with default values.
+     */
+    public ReadProjection() {
+        inlineXML         = DEFAULT_INLINE_XML;
+        binaryContent     = DEFAULT_BINARY_CONTENT;
+        latestVersionOnly = DEFAULT_LATEST_VERSION_ONLY;
+    }
+
+    /**
+     * Creates an instance based on the current state of this one.
+     *
+     * @return a deep copy.
+     */
+    public ReadProjection copy() {
+        ReadProjection copy = new ReadProjection();
+        copy.setDatastreamIds(datastreamIds);
+        copy.setInlineXML(inlineXML);
+        copy.setBinaryContent(binaryContent);
+        copy.setLatestVersionOnly(latestVersionOnly);
+        return copy;
+    }
+
+    /**
+     * Gets the ids of the datastreams to read.
+     *
+     * @return an unmodifiable set of ids, or <code>null</code> if all
+     *         datastreams are to be read.
+     */
+    public Set<String> getDatastreamIds() {
+        return datastreamIds;
+    }
+
+    /**
+     * Sets the ids of the datastreams to read. The given set is copied.
+     * <p>
+     * If the set is empty, only the object's pid and properties will be
+     * read, and readers may stop parsing as soon as they have been read.
+     *
+     * @param datastreamIds the ids, possibly empty, or <code>null</code> to
+     *        read all datastreams.
+     */
+    public void setDatastreamIds(Set<String> datastreamIds) {
+        if (datastreamIds == null) {
+            this.datastreamIds = null;
+        } else {
+            this.datastreamIds = Collections.unmodifiableSet(
+                    new HashSet<String>(datastreamIds));
+        }
+    }
+
+    /**
+     * Tells whether the datastream with the given id is to be read.
+     *
+     * @param id the datastream id.
+     * @return true if it should be read, false if it should be skipped.
+     */
+    public boolean includesDatastream(String id) {
+        return datastreamIds == null || datastreamIds.contains(id);
+    }
+
+    /**
+     * Tells whether any datastream is to be read.
+     *
+     * @return false if only the object's pid and properties are to be read.
+     */
+    public boolean includesAnyDatastream() {
+        return datastreamIds == null || !datastreamIds.isEmpty();
+    }
+
+    /**
+     * Gets whether inline XML content is to be read.
+     *
+     * @return the value.
+     */
+    public boolean getInlineXML() {
+        return inlineXML;
+    }
+
+    /**
+     * Sets whether inline XML content is to be read. If false, datastream
+     * versions with inline XML will have no <code>inlineXML</code> value.
+     *
+     * @param inlineXML the new value.
+     */
+    public void setInlineXML(boolean inlineXML) {
+        this.inlineXML = inlineXML;
+    }
+
+    /**
+     * Gets whether embedded binary content is to be read.
+     *
+     * @return the value.
+     */
+    public boolean getBinaryContent() {
+        return binaryContent;
+    }
+
+    /**
+     * Sets whether embedded binary content is to be read. If false, the
+     * reader's {@link ContentHandler} will not be called, and datastream
+     * versions with such content will have no <code>contentLocation</code>.
+     *
+     * @param binaryContent the new value.
+     */
+    public void setBinaryContent(boolean binaryContent) {
+        this.binaryContent = binaryContent;
+    }
+
+    /**
+     * Gets whether only the latest version of each datastream is to be read.
+     *
+     * @return the value.
+     */
+    public boolean getLatestVersionOnly() {
+        return latestVersionOnly;
+    }
+
+    /**
+     * Sets whether only the latest version of each datastream is to be read.
+     * The latest version is the one with the most recent created date, or
+     * if no version has a created date, the first one encountered.
+     *
+     * @param latestVersionOnly the new value.
+     */
+    public void setLatestVersionOnly(boolean latestVersionOnly) {
+        this.latestVersionOnly = latestVersionOnly;
+    }
+
+}
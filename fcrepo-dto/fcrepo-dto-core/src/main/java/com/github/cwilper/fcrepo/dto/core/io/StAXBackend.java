@@ -0,0 +1,184 @@
+package com.github.cwilper.fcrepo.dto.core.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+
+/**
+ * A StAX implementation to be used for reading and writing XML.
+ * <p>
+ * Other than {@link #DEFAULT}, each backend's input factory is configured
+ * for speed and safety with untrusted input: DTDs are not processed (so
+ * no entities are declared or expanded), external entities are not
+ * resolved, adjacent text is not coalesced, and element and namespace
+ * names are interned where supported.
+ * <p>
+ * Factories are created once per backend, on first use, and shared.
+ * The Woodstox and Aalto backends are only available if the corresponding
+ * library is on the classpath.
+ */
+public enum StAXBackend {
+
+    /**
+     * The implementation built into the JDK, with its default
+     * configuration. Unlike the StAX service lookup, this doesn't depend on
+     * which other implementations are on the classpath, or in what order.
+     */
+    DEFAULT("com.sun.xml.internal.stream.XMLInputFactoryImpl",
+            "com.sun.xml.internal.stream.XMLOutputFactoryImpl"),
+
+    /** The implementation built into the JDK. */
+    JDK("com.sun.xml.internal.stream.XMLInputFactoryImpl",
+            "com.sun.xml.internal.stream.XMLOutputFactoryImpl"),
+
+    /** Woodstox (<code>com.fasterxml.woodstox:woodstox-core</code>). */
+    WOODSTOX("com.ctc.wstx.stax.WstxInputFactory",
+            "com.ctc.wstx.stax.WstxOutputFactory"),
+
+    /** Aalto (<code>com.fasterxml:aalto-xml</code>). */
+    AALTO("com.fasterxml.aalto.stax.InputFactoryImpl",
+            "com.fasterxml.aalto.stax.OutputFactoryImpl");
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(StAXBackend.class);
+
+    // Stax2 extensions supported by Woodstox and Aalto
+    private static final String P_INTERN_NAMES =
+            "org.codehaus.stax2.internNames";
+    private static final String P_INTERN_NS_URIS =
+            "org.codehaus.stax2.internNsUris";
+
+    private final String inputFactoryClass;
+    private final String outputFactoryClass;
+
+    private volatile XMLInputFactory inputFactory;
+    private volatile XMLOutputFactory outputFactory;
+
+    StAXBackend(String inputFactoryClass, String outputFactoryClass) {
+        this.inputFactoryClass = inputFactoryClass;
+        this.outputFactoryClass = outputFactoryClass;
+    }
+
+    /**
+     * Tells whether this backend's implementation can be loaded.
+     *
+     * @return whether it is available.
+     */
+    public boolean isAvailable() {
+        try {
+            getInputFactory();
+            getOutputFactory();
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Gets the shared, configured input factory of this backend. Readers
+     * may be created from it by any number of threads, but it must not be
+     * reconfigured.
+     *
+     * @return the factory, never <code>null</code>.
+     * @throws IllegalStateException if the backend is not available.
+     */
+    public XMLInputFactory getInputFactory() {
+        XMLInputFactory factory = inputFactory;
+        if (factory == null) {
+            synchronized (this) {
+                factory = inputFactory;
+                if (factory == null) {
+                    factory = newInputFactory();
+                    inputFactory = factory;
+                }
+            }
+        }
+        return factory;
+    }
+
+    /**
+     * Gets the shared, configured output factory of this backend. Writers
+     * may be created from it by any number of threads, but it must not be
+     * reconfigured.
+     *
+     * @return the factory, never <code>null</code>.
+     * @throws IllegalStateException if the backend is not available.
+     */
+    public XMLOutputFactory getOutputFactory() {
+        XMLOutputFactory factory = outputFactory;
+        if (factory == null) {
+            synchronized (this) {
+                factory = outputFactory;
+                if (factory == null) {
+                    factory = newOutputFactory();
+                    outputFactory = factory;
+                }
+            }
+        }
+        return factory;
+    }
+
+    /**
+     * Creates a new, unconfigured input factory of this backend, for uses
+     * that need settings other than those of the shared one.
+     *
+     * @return the factory, never <code>null</code>.
+     * @throws IllegalStateException if the backend is not available.
+     */
+    XMLInputFactory createInputFactory() {
+        return (XMLInputFactory) newInstance(inputFactoryClass,
+                XMLInputFactory.class);
+    }
+
+    private XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = createInputFactory();
+        if (this == DEFAULT) return factory;
+        setProperty(factory, XMLInputFactory.SUPPORT_DTD, false);
+        setProperty(factory, XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                false);
+        setProperty(factory, XMLInputFactory.IS_COALESCING, false);
+        setProperty(factory, P_INTERN_NAMES, true);
+        setProperty(factory, P_INTERN_NS_URIS, true);
+        return factory;
+    }
+
+    private XMLOutputFactory newOutputFactory() {
+        return (XMLOutputFactory) newInstance(outputFactoryClass,
+                XMLOutputFactory.class);
+    }
+
+    private Object newInstance(String className, Class<?> factoryType) {
+        try {
+            return Class.forName(className).newInstance();
+        } catch (Throwable th) {
+            if (this == DEFAULT || this == JDK) {
+                // the internal class isn't accessible on Java 9+, which
+                // provides a method for getting it instead
+                try {
+                    return factoryType.getMethod("newDefaultFactory")
+                            .invoke(null);
+                } catch (Throwable th2) {
+                    // fall through
+                }
+            }
+            throw new IllegalStateException("StAX backend " + this
+                    + " is not available", th);
+        }
+    }
+
+    private void setProperty(XMLInputFactory factory,
+                             String name,
+                             boolean value) {
+        if (factory.isPropertySupported(name)) {
+            try {
+                factory.setProperty(name, value);
+            } catch (IllegalArgumentException e) {
+                logger.debug("StAX backend " + this + " rejected " + name
+                        + "=" + value, e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,293 @@
+package com.github.cwilper.fcrepo.dto.core.io;
+
+import com.github.cwilper.fcrepo.dto.core.FedoraObject;
+import com.github.cwilper.ttff.Sink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads every object file in a directory tree, such as a Fedora
+ * <code>objectStore</code>, using a pool of threads.
+ * <p>
+ * Each thread parses with its own {@link DTOReader#getInstance() instance}
+ * of the reader given at construction time, and the objects are delivered
+ * to a {@link Sink} in the calling thread, in no particular order. The
+ * sink therefore need not be thread-safe.
+ * <p>
+ * If the reader is a {@link ContentHandlingDTOReader}, files are read via
+ * its {@link ContentHandlingDTOReader#readObject(File) readObject(File)}
+ * method, so any file-specific reading (such as memory-mapping) is used.
+ * <p>
+ * The number of objects in memory is bounded by
+ * {@link #setMaxInFlight(int) maxInFlight}: no more than that many objects
+ * will be parsed or awaiting delivery at any given time. If the sink falls
+ * behind, file parsing is paused until it catches up. The bound counts
+ * objects, not bytes, so memory use also depends on how large they are.
+ * <p>
+ * <b>NOTE:</b> Instances are not thread-safe. The reader instances used
+ * by the threads are kept until this reader is {@link #close()}d, so
+ * any content they have handled remains available until then.
+ */
+public class TreeReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(
+            TreeReader.class);
+
+    private final DTOReader reader;
+    private final List<DTOReader> readers = new ArrayList<DTOReader>();
+    private final BlockingQueue<DTOReader> idleReaders =
+            new LinkedBlockingQueue<DTOReader>();
+
+    private int threads;
+    private int maxInFlight;
+    private FileFilter fileFilter;
+    private boolean failFast;
+
+    /**
+     * Creates an instance that uses one thread per available processor,
+     * allows two objects in flight per thread, reads all files, and fails
+     * on the first file that can't be read.
+     *
+     * @param reader the reader whose configuration will be used for
+     *        parsing. It is not used directly, and is not closed by
+     *        this instance.
+     */
+    public TreeReader(DTOReader reader) {
+        if (reader == null) throw new NullPointerException();
+        this.reader = reader;
+        threads = Runtime.getRuntime().availableProcessors();
+        maxInFlight = threads * 2;
+        failFast = true;
+    }
+
+    /**
+     * Sets the number of threads used for parsing.
+     *
+     * @param threads the new value, which must be positive.
+     * @throws IllegalArgumentException if the value is less than one.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException();
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the maximum number of objects that may be parsed or awaiting
+     * delivery at any given time. Values less than the number of threads
+     * will leave some threads idle.
+     * <p>
+     * This is a count of objects, not a limit on memory use; when objects
+     * may be large, it should be set with their size in mind.
+     *
+     * @param maxInFlight the new value, which must be positive.
+     * @throws IllegalArgumentException if the value is less than one.
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) throw new IllegalArgumentException();
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Sets the filter used to select which files in the tree are read.
+     * Directories are always descended into, regardless of the filter.
+     *
+     * @param fileFilter the new value, or <code>null</code> to read all files.
+     */
+    public void setFileFilter(FileFilter fileFilter) {
+        this.fileFilter = fileFilter;
+    }
+
+    /**
+     * Sets whether reading should stop at the first file that can't be
+     * read. If <code>false</code>, such files will be logged and skipped.
+     *
+     * @param failFast the new value.
+     */
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+
+    /**
+     * Reads all objects in the given directory tree, delivering each to the
+     * given sink as soon as it has been parsed.
+     *
+     * @param dir the base directory of the tree.
+     * @param sink the sink to deliver objects to. It will not be closed.
+     * @return the number of objects delivered.
+     * @throws IOException if the tree can't be walked, the sink fails, or
+     *         (if <code>failFast</code>) a file can't be read. In the
+     *         latter case, the message will include the file's path.
+     */
+    public long readObjects(File dir, Sink<FedoraObject> sink)
+            throws IOException {
+        if (!dir.isDirectory()) {
+            throw new FileNotFoundException("No such directory: " + dir);
+        }
+        while (readers.size() < threads) {
+            DTOReader instance = reader.getInstance();
+            readers.add(instance);
+            idleReaders.add(instance);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return new Walk(executor, sink).run(dir);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted reading " + dir);
+        } finally {
+            executor.shutdownNow();
+            awaitTermination(executor);
+        }
+    }
+
+    // waits for running tasks so their readers are returned to the pool
+    private static void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Releases all resources associated with this reader, including the
+     * reader instances used by the threads.
+     * This can be safely called multiple times.
+     */
+    @PreDestroy
+    public void close() {
+        for (DTOReader instance: readers) {
+            instance.close();
+        }
+        readers.clear();
+        idleReaders.clear();
+    }
+
+    // state of a single call to readObjects
+    private class Walk {
+
+        private final CompletionService<FedoraObject> completionService;
+        private final Sink<FedoraObject> sink;
+
+        private int inFlight;
+        private long count;
+
+        Walk(ExecutorService executor, Sink<FedoraObject> sink) {
+            this.completionService =
+                    new ExecutorCompletionService<FedoraObject>(executor);
+            this.sink = sink;
+        }
+
+        long run(File baseDir) throws IOException, InterruptedException {
+            // depth-first, so only one listing per level is held at once
+            LinkedList<File> dirs = new LinkedList<File>();
+            dirs.add(baseDir);
+            while (!dirs.isEmpty()) {
+                File dir = dirs.removeFirst();
+                File[] files = dir.listFiles();
+                if (files == null) {
+                    throw new IOException("Can't list directory " + dir);
+                }
+                for (int i = files.length - 1; i >= 0; i--) {
+                    File file = files[i];
+                    if (file.isDirectory()) {
+                        dirs.addFirst(file);
+                    } else if (fileFilter == null || fileFilter.accept(file)) {
+                        submit(file);
+                    }
+                }
+            }
+            while (inFlight > 0) {
+                deliver(completionService.take());
+            }
+            return count;
+        }
+
+        private void submit(File file)
+                throws IOException, InterruptedException {
+            while (inFlight >= maxInFlight) {
+                deliver(completionService.take());
+            }
+            completionService.submit(new ReadTask(file));
+            inFlight++;
+            Future<FedoraObject> done;
+            while ((done = completionService.poll()) != null) {
+                deliver(done);
+            }
+        }
+
+        private void deliver(Future<FedoraObject> done)
+                throws IOException, InterruptedException {
+            inFlight--;
+            FedoraObject obj;
+            try {
+                obj = done.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (!(cause instanceof IOException)) {
+                    throw new IOException(cause);
+                } else if (failFast) {
+                    throw (IOException) cause;
+                } else {
+                    logger.warn("Skipping unreadable file", cause);
+                    return;
+                }
+            }
+            sink.put(obj);
+            count++;
+        }
+    }
+
+    // reads a single file with an idle reader instance
+    private class ReadTask implements Callable<FedoraObject> {
+
+        private final File file;
+
+        ReadTask(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public FedoraObject call() throws IOException, InterruptedException {
+            DTOReader instance = idleReaders.take();
+            try {
+                if (instance instanceof ContentHandlingDTOReader) {
+                    return ((ContentHandlingDTOReader) instance).readObject(
+                            file);
+                }
+                return instance.readObject(new FileInputStream(file));
+            } catch (IOException e) {
+                throw new IOException("Error reading " + file, e);
+            } catch (RuntimeException e) {
+                throw new IOException("Error reading " + file, e);
+            } finally {
+                idleReaders.add(instance);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.cwilper.fcrepo.dto.core.io;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * Canonicalizes values that recur across many objects, such as MIME types,
+ * format URIs, and datastream ids, so that a {@link DTOReader} can share
+ * one instance of each rather than creating a new one every time it is
+ * read.
+ * <p>
+ * Implementations must be thread-safe, since a single dictionary may be
+ * shared by readers in several threads.
+ */
+public interface ValueDictionary {
+
+    /**
+     * Gets the canonical instance of the given string.
+     *
+     * @param value the string, possibly <code>null</code>.
+     * @return a string equal to the given one, or <code>null</code> if the
+     *         given string is <code>null</code>.
+     */
+    String getString(String value);
+
+    /**
+     * Gets the canonical <code>URI</code> for the given string, parsing it
+     * only if necessary.
+     *
+     * @param value the string, possibly <code>null</code>.
+     * @return a URI equal to <code>new URI(value)</code>, or
+     *         <code>null</code> if the given string is <code>null</code>.
+     * @throws URISyntaxException if the string is not a valid URI.
+     */
+    URI getURI(String value) throws URISyntaxException;
+
+}
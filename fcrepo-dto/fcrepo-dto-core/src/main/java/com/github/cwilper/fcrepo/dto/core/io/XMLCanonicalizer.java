@@ -0,0 +1,382 @@
+package com.github.cwilper.fcrepo.dto.core.io;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Produces the canonical form of XML documents, without comments, as
+ * defined by <a href="http://www.w3.org/TR/xml-c14n11/">Canonical XML
+ * Version 1.1</a>, in a single streaming pass that also checks that the
+ * input is well-formed.
+ * <p>
+ * Output is byte-for-byte the same as that of the Apache XML Security
+ * implementation used previously, including its ordering of attributes
+ * and its test for relative namespace URIs. Internal DTD subsets are
+ * honored for entity and default attribute declarations, but unlike a DOM
+ * parser, external DTDs and entities are never fetched.
+ * <p>
+ * All methods are thread-safe.
+ */
+public final class XMLCanonicalizer {
+
+    private static final String IGNORE_EXTERNAL_DTD =
+            "http://java.sun.com/xml/stream/properties/ignore-external-dtd";
+
+    // orders attributes as xmlsec does: unqualified ones by name, followed
+    // by qualified ones by namespace uri then local name
+    private static final Comparator<String[]> ATTRIBUTE_ORDER =
+            new Comparator<String[]>() {
+        @Override
+        public int compare(String[] a, String[] b) {
+            if (a[0] == null) {
+                return b[0] == null ? a[1].compareTo(b[1]) : -1;
+            } else if (b[0] == null) {
+                return 1;
+            }
+            int c = a[0].compareTo(b[0]);
+            return c != 0 ? c : a[1].compareTo(b[1]);
+        }
+    };
+
+    private static final XMLInputFactory inputFactory = newInputFactory();
+
+    private XMLCanonicalizer() { }
+
+    /**
+     * Canonicalizes the given document.
+     *
+     * @param inBytes the document.
+     * @return the canonical form, as a UTF-8 encoded byte array.
+     * @throws CanonicalizationException if the document is well-formed but
+     *         can't be canonicalized.
+     * @throws IOException if the document is not well-formed.
+     */
+    public static byte[] canonicalize(byte[] inBytes) throws IOException {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream(
+                inBytes.length);
+        canonicalize(new ByteArrayInputStream(inBytes), sink);
+        return sink.toByteArray();
+    }
+
+    /**
+     * Canonicalizes the document read from the given stream. If an
+     * exception is thrown, partial output may have been written.
+     *
+     * @param source the document. It will be left open.
+     * @param sink the stream to write the UTF-8 encoded canonical form to.
+     *        It will be left open.
+     * @throws CanonicalizationException if the document is well-formed but
+     *         can't be canonicalized.
+     * @throws IOException if the document is not well-formed, or reading
+     *         or writing fails.
+     */
+    public static void canonicalize(InputStream source, OutputStream sink)
+            throws IOException {
+        XMLStreamReader r = null;
+        try {
+            r = inputFactory.createXMLStreamReader(source);
+            Writer writer = new OutputStreamWriter(sink, "UTF-8");
+            new Serializer(r, writer).serialize();
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            XMLUtil.closeQuietly(r);
+        }
+    }
+
+    /**
+     * Checks that the given document is well-formed, as canonicalizing it
+     * would, but without producing any output.
+     *
+     * @param inBytes the document.
+     * @return whether the document can be embedded in another one exactly
+     *         as given: that is, whether it has no byte order mark, XML
+     *         declaration, DOCTYPE declaration, or comments, and no
+     *         processing instructions outside of the document element.
+     * @throws IOException if the document is not well-formed.
+     */
+    public static boolean check(byte[] inBytes) throws IOException {
+        boolean embeddable = inBytes.length == 0
+                || (inBytes[0] & 0xff) != 0xEF;
+        XMLStreamReader r = null;
+        try {
+            r = inputFactory.createXMLStreamReader(
+                    new ByteArrayInputStream(inBytes));
+            if (r.getVersion() != null) embeddable = false;
+            int depth = 0;
+            while (r.hasNext()) {
+                switch (r.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        depth--;
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        if (depth == 0) embeddable = false;
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                    case XMLStreamConstants.DTD:
+                        embeddable = false;
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return embeddable;
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            XMLUtil.closeQuietly(r);
+        }
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        XMLInputFactory factory = StAXBackend.JDK.createInputFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES,
+                true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, true);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                false);
+        if (factory.isPropertySupported(IGNORE_EXTERNAL_DTD)) {
+            factory.setProperty(IGNORE_EXTERNAL_DTD, true);
+        }
+        return factory;
+    }
+
+    // the state of a single canonicalization
+    private static class Serializer {
+
+        private final XMLStreamReader r;
+        private final Writer w;
+
+        // the namespace bindings rendered on the current element and its
+        // ancestors, and for each open element, the bindings it replaced
+        private final Map<String, String> rendered =
+                new HashMap<String, String>();
+        private final List<String[]> replaced = new ArrayList<String[]>();
+        private int[] replacedCounts = new int[16];
+
+        private final List<String[]> namespaces = new ArrayList<String[]>();
+        private final List<String[]> attributes = new ArrayList<String[]>();
+
+        private int depth;
+        private boolean afterRoot;
+        private String relativeNamespace;
+
+        Serializer(XMLStreamReader r, Writer w) {
+            this.r = r;
+            this.w = w;
+            rendered.put("", "");
+        }
+
+        void serialize() throws IOException, XMLStreamException {
+            while (r.hasNext()) {
+                switch (r.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        startElement();
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        endElement();
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        // text outside the document element is whitespace
+                        if (depth > 0) {
+                            writeText(r.getTextCharacters(), r.getTextStart(),
+                                    r.getTextLength());
+                        }
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        processingInstruction();
+                        break;
+                    default:
+                        // comments, the doctype, and the end of the document
+                        break;
+                }
+            }
+            // like xmlsec, report this only for well-formed input
+            if (relativeNamespace != null) {
+                throw new CanonicalizationException("Can't canonicalize XML "
+                        + "with relative namespace URI: "
+                        + relativeNamespace);
+            }
+        }
+
+        private void startElement() throws IOException {
+            if (depth == replacedCounts.length) {
+                replacedCounts = Arrays.copyOf(replacedCounts, depth * 2);
+            }
+            replacedCounts[depth++] = 0;
+            namespaces.clear();
+            for (int i = 0; i < r.getNamespaceCount(); i++) {
+                String prefix = emptyIfNull(r.getNamespacePrefix(i));
+                String uri = emptyIfNull(r.getNamespaceURI(i));
+                if (prefix.equals(XMLConstants.XML_NS_PREFIX)) continue;
+                String previous = rendered.get(prefix);
+                if (uri.equals(previous)) continue;
+                rendered.put(prefix, uri);
+                replaced.add(new String[] { prefix, previous });
+                replacedCounts[depth - 1]++;
+                namespaces.add(new String[] { prefix, uri });
+                if (uri.length() > 0 && uri.indexOf(':') < 1
+                        && relativeNamespace == null) {
+                    relativeNamespace = uri;
+                }
+            }
+            attributes.clear();
+            for (int i = 0; i < r.getAttributeCount(); i++) {
+                String uri = r.getAttributeNamespace(i);
+                if (uri != null && uri.length() == 0) uri = null;
+                attributes.add(new String[] { uri, r.getAttributeLocalName(i),
+                        qualify(r.getAttributePrefix(i),
+                                r.getAttributeLocalName(i)),
+                        r.getAttributeValue(i) });
+            }
+            w.write('<');
+            w.write(qualify(r.getPrefix(), r.getLocalName()));
+            if (namespaces.size() > 1) {
+                String[][] sorted = namespaces.toArray(
+                        new String[namespaces.size()][]);
+                Arrays.sort(sorted, new Comparator<String[]>() {
+                    @Override
+                    public int compare(String[] a, String[] b) {
+                        return a[0].compareTo(b[0]);
+                    }
+                });
+                namespaces.clear();
+                namespaces.addAll(Arrays.asList(sorted));
+            }
+            for (String[] ns: namespaces) {
+                w.write(ns[0].length() == 0 ? " xmlns" : " xmlns:");
+                w.write(ns[0]);
+                writeAttributeValue(ns[1]);
+            }
+            if (attributes.size() > 1) {
+                String[][] sorted = attributes.toArray(
+                        new String[attributes.size()][]);
+                Arrays.sort(sorted, ATTRIBUTE_ORDER);
+                attributes.clear();
+                attributes.addAll(Arrays.asList(sorted));
+            }
+            for (String[] attribute: attributes) {
+                w.write(' ');
+                w.write(attribute[2]);
+                writeAttributeValue(attribute[3]);
+            }
+            w.write('>');
+        }
+
+        private void endElement() throws IOException {
+            w.write("</");
+            w.write(qualify(r.getPrefix(), r.getLocalName()));
+            w.write('>');
+            for (int i = replacedCounts[--depth]; i > 0; i--) {
+                String[] binding = replaced.remove(replaced.size() - 1);
+                if (binding[1] == null) {
+                    rendered.remove(binding[0]);
+                } else {
+                    rendered.put(binding[0], binding[1]);
+                }
+            }
+            if (depth == 0) afterRoot = true;
+        }
+
+        private void processingInstruction() throws IOException {
+            if (depth == 0 && afterRoot) w.write('\n');
+            w.write("<?");
+            writePIText(r.getPITarget());
+            String data = r.getPIData();
+            if (data != null && data.length() > 0) {
+                w.write(' ');
+                writePIText(data);
+            }
+            w.write("?>");
+            if (depth == 0 && !afterRoot) w.write('\n');
+        }
+
+        private void writeText(char[] c, int start, int length)
+                throws IOException {
+            int end = start + length;
+            int from = start;
+            for (int i = start; i < end; i++) {
+                String escaped;
+                switch (c[i]) {
+                    case '&': escaped = "&amp;"; break;
+                    case '<': escaped = "&lt;"; break;
+                    case '>': escaped = "&gt;"; break;
+                    case '\r': escaped = "&#xD;"; break;
+                    default: continue;
+                }
+                w.write(c, from, i - from);
+                w.write(escaped);
+                from = i + 1;
+            }
+            w.write(c, from, end - from);
+        }
+
+        private void writeAttributeValue(String value) throws IOException {
+            w.write("=\"");
+            int from = 0;
+            for (int i = 0; i < value.length(); i++) {
+                String escaped;
+                switch (value.charAt(i)) {
+                    case '&': escaped = "&amp;"; break;
+                    case '<': escaped = "&lt;"; break;
+                    case '"': escaped = "&quot;"; break;
+                    case '\t': escaped = "&#x9;"; break;
+                    case '\n': escaped = "&#xA;"; break;
+                    case '\r': escaped = "&#xD;"; break;
+                    default: continue;
+                }
+                w.write(value, from, i - from);
+                w.write(escaped);
+                from = i + 1;
+            }
+            w.write(value, from, value.length() - from);
+            w.write('"');
+        }
+
+        private void writePIText(String text) throws IOException {
+            int from = 0;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '\r') {
+                    w.write(text, from, i - from);
+                    w.write("&#xD;");
+                    from = i + 1;
+                }
+            }
+            w.write(text, from, text.length() - from);
+        }
+    }
+
+    private static String qualify(String prefix, String localName) {
+        if (prefix == null || prefix.length() == 0) return localName;
+        return prefix + ":" + localName;
+    }
+
+    private static String emptyIfNull(String value) {
+        return value == null ? "" : value;
+    }
+
+}
@@ -2,17 +2,19 @@ package com.github.cwilper.fcrepo.dto.core.io;
 
 import javanet.staxutils.XMLStreamUtils;
 import org.apache.commons.io.IOUtils;
-import org.apache.xml.security.c14n.Canonicalizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.ErrorListener;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
@@ -22,10 +24,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.StringReader;
-import java.io.StringWriter;
-import java.io.Writer;
+import java.util.Arrays;
 
 /**
  * XML reading and writing utility methods used by <code>dto.core</code>
@@ -49,7 +49,6 @@ public final class XMLUtil implements XMLStreamConstants {
             "</xsl:stylesheet>";
 
     // Stylesheet that does pretty printing (output omits XML declaration)
-    // TODO: Combine these and possibly pre-compile them?
     private final static String prettyXSLLite =
             "<xsl:stylesheet version=\"1.0\" " +
             " xmlns:xalan=\"http://xml.apache.org/xalan\"" +
@@ -62,12 +61,31 @@ public final class XMLUtil implements XMLStreamConstants {
             "</xsl:template>" +
             "</xsl:stylesheet>";
 
-    static {
-        // initialize xmlsec
-        org.apache.xml.security.Init.init();
+    private XMLUtil() { }
+
+    /**
+     * Gets a shared <code>XMLInputFactory</code>, so that the cost of
+     * locating and configuring one isn't paid every time a reader is
+     * needed. Readers may be created from it by any number of threads, but
+     * it must not be reconfigured.
+     *
+     * @return the factory of {@link StAXBackend#DEFAULT}.
+     */
+    public static XMLInputFactory getInputFactory() {
+        return StAXBackend.DEFAULT.getInputFactory();
     }
 
-    private XMLUtil() { }
+    /**
+     * Gets a shared <code>XMLOutputFactory</code>, so that the cost of
+     * locating and configuring one isn't paid every time a writer is
+     * needed. Writers may be created from it by any number of threads, but
+     * it must not be reconfigured.
+     *
+     * @return the factory of {@link StAXBackend#DEFAULT}.
+     */
+    public static XMLOutputFactory getOutputFactory() {
+        return StAXBackend.DEFAULT.getOutputFactory();
+    }
 
     /**
      * Pretty-prints the given XML.
@@ -98,28 +116,46 @@ public final class XMLUtil implements XMLStreamConstants {
     public static byte[] prettyPrint(byte[] inBytes,
                                      boolean omitXMLDeclaration)
             throws IOException {
-        ByteArrayOutputStream sink = new ByteArrayOutputStream();
-        prettyPrint(new ByteArrayInputStream(inBytes),
-                new OutputStreamWriter(sink, "UTF-8"), omitXMLDeclaration);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream(
+                inBytes.length + inBytes.length / 4);
+        prettyPrint(new ByteArrayInputStream(inBytes), sink,
+                omitXMLDeclaration);
         return sink.toByteArray();
     }
 
-    private static void prettyPrint(InputStream source,
-                                    Writer sink,
-                                    boolean omitXMLDeclaration)
+    /**
+     * Pretty-prints the XML read from the given stream, as with
+     * {@link #prettyPrint(byte[], boolean)}, writing the result directly
+     * to the given sink.
+     * <p>
+     * The stylesheets are compiled once and shared, so each call only pays
+     * for a transformer created from the compiled form, and the
+     * transformation itself. No transformer outlives the call, so no
+     * thread holds on to the transformation classes.
+     *
+     * @param source the xml to be pretty-printed. It will be closed when
+     *        finished.
+     * @param sink the stream to write the UTF-8 encoded result to. It will
+     *        be left open. Partial output may have been written if an
+     *        exception is thrown.
+     * @param omitXMLDeclaration whether to omit the xml declaration in the
+     *        output.
+     * @throws IOException if the input is not well-formed, or reading or
+     *         writing fails.
+     */
+    public static void prettyPrint(InputStream source,
+                                   OutputStream sink,
+                                   boolean omitXMLDeclaration)
             throws IOException {
+        Templates templates = omitXMLDeclaration
+                ? PrettyPrinters.WITHOUT_DECLARATION
+                : PrettyPrinters.WITH_DECLARATION;
         try {
-            TransformerFactory tFactory = TransformerFactory.newInstance();
-            String xsl = prettyXSL;
-            if (omitXMLDeclaration) xsl = prettyXSLLite;
-            Transformer t = tFactory.newTransformer(
-                    new StreamSource(new StringReader(xsl)));
+            Transformer t = templates.newTransformer();
             t.setErrorListener(new DebugLoggingErrorListener());
-            StringWriter preTrimmed = new StringWriter();
-            t.transform(new StreamSource(source), new StreamResult(preTrimmed));
-            preTrimmed.flush();
-            sink.write(preTrimmed.toString().trim());
-            sink.flush();
+            TrimmingOutputStream trimmed = new TrimmingOutputStream(sink);
+            t.transform(new StreamSource(source), new StreamResult(trimmed));
+            trimmed.flush();
         } catch (Exception e) {
             throw new IOException(e);
         } finally {
@@ -130,23 +166,40 @@ public final class XMLUtil implements XMLStreamConstants {
     /**
      * Produces the canonicalized form of the input document, without comments,
      * as defined by <a href="http://www.w3.org/TR/xml-c14n11/">XML
-     * Canonicalization 1.1</a>.
-     * <p>
-     * <b>NOTE:</b> Although this method will likely fail if the input is
-     * malformed XML, successful canonicalization does not imply that the
-     * input was well-formed!
+     * Canonicalization 1.1</a>. Successful canonicalization implies that the
+     * input was well-formed.
      *
      * @param inBytes the xml to be canonicalized.
      * @return the canonicalized XML as a UTF-8 encoded byte array.
      * @throws IOException if the input cannot be canonicalized for any reason.
+     * @see XMLCanonicalizer
      */
     public static byte[] canonicalize(byte[] inBytes) throws IOException {
+        return XMLCanonicalizer.canonicalize(inBytes);
+    }
+
+    /**
+     * Canonicalizes the document read from the given stream as with
+     * {@link #canonicalize(byte[])}, in a single pass and without holding
+     * the document in memory. This is suitable for computing a digest of
+     * the canonical form, by writing to a
+     * <code>java.security.DigestOutputStream</code>.
+     *
+     * @param source the xml to be canonicalized. It will be closed when
+     *        finished.
+     * @param sink the stream to write the UTF-8 encoded canonical form to.
+     *        It will be left open.
+     * @throws IOException if the input cannot be canonicalized for any
+     *         reason, or reading or writing fails. Partial output may have
+     *         been written.
+     * @see XMLCanonicalizer
+     */
+    public static void canonicalize(InputStream source, OutputStream sink)
+            throws IOException {
         try {
-            Canonicalizer c = Canonicalizer.getInstance(
-                    Canonicalizer.ALGO_ID_C14N11_OMIT_COMMENTS);
-            return c.canonicalize(inBytes);
-        } catch (Exception e) {
-            throw new IOException(e);
+            XMLCanonicalizer.canonicalize(source, sink);
+        } finally {
+            IOUtils.closeQuietly(source);
         }
     }
 
@@ -201,8 +254,10 @@ public final class XMLUtil implements XMLStreamConstants {
      */
     public static void copy(XMLStreamReader source, OutputStream sink)
             throws XMLStreamException {
-        XMLOutputFactory factory = XMLOutputFactory.newInstance();
-        XMLStreamWriter writer = factory.createXMLStreamWriter(sink, "UTF-8");
+        // the JDK's writer tolerates the undeclared namespaces noted above,
+        // which stricter implementations reject
+        XMLStreamWriter writer = StAXBackend.JDK.getOutputFactory()
+                .createXMLStreamWriter(sink, "UTF-8");
         copy(source, writer);
         writer.flush();
     }
@@ -233,6 +288,91 @@ public final class XMLUtil implements XMLStreamConstants {
         XMLStreamUtils.copy(new BalancedXMLStreamReader(source), sink);
     }
 
+    // the compiled pretty-printing stylesheets, created on first use.
+    // Compiled stylesheets are thread-safe, and transformers are cheap to
+    // create from them, so only the former are shared.
+    private static class PrettyPrinters {
+
+        static final Templates WITH_DECLARATION = compile(prettyXSL);
+
+        static final Templates WITHOUT_DECLARATION = compile(prettyXSLLite);
+
+        private static Templates compile(String xsl) {
+            try {
+                TransformerFactory factory = TransformerFactory.newInstance();
+                factory.setErrorListener(new DebugLoggingErrorListener());
+                return factory.newTemplates(
+                        new StreamSource(new StringReader(xsl)));
+            } catch (TransformerConfigurationException e) {
+                throw new IllegalStateException("Can't compile stylesheet",
+                        e);
+            }
+        }
+    }
+
+    // drops leading and trailing whitespace and control characters from
+    // what's written through it, holding them back until they're known
+    // not to be trailing
+    private static class TrimmingOutputStream extends OutputStream {
+
+        private final OutputStream sink;
+
+        private boolean started;
+        private byte[] pending = new byte[16];
+        private int pendingCount;
+
+        TrimmingOutputStream(OutputStream sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (isSpace(b)) {
+                if (!started) return;
+                if (pendingCount == pending.length) {
+                    pending = Arrays.copyOf(pending, pendingCount * 2);
+                }
+                pending[pendingCount++] = (byte) b;
+            } else {
+                writeRun(new byte[] { (byte) b }, 0, 1);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int end = off + len;
+            int run = off;
+            for (int i = off; i < end; i++) {
+                if (isSpace(b[i])) {
+                    if (i > run) writeRun(b, run, i - run);
+                    write(b[i]);
+                    run = i + 1;
+                }
+            }
+            if (end > run) writeRun(b, run, end - run);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            sink.flush();
+        }
+
+        // writes non-whitespace, preceded by any whitespace held back
+        private void writeRun(byte[] b, int off, int len) throws IOException {
+            started = true;
+            if (pendingCount > 0) {
+                sink.write(pending, 0, pendingCount);
+                pendingCount = 0;
+            }
+            sink.write(b, off, len);
+        }
+
+        // as with String.trim(), anything up to and including a space
+        private static boolean isSpace(int b) {
+            return (b & 0xff) <= ' ';
+        }
+    }
+
     private static class DebugLoggingErrorListener implements ErrorListener {
 
         @Override
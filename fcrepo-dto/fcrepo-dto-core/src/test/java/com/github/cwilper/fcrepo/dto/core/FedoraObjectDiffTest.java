@@ -0,0 +1,130 @@
+package com.github.cwilper.fcrepo.dto.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Date;
+
+/**
+ * Unit tests for <code>FedoraObjectDiff</code>.
+ */
+public class FedoraObjectDiffTest {
+
+    @Test
+    public void equalObjects() {
+        FedoraObject obj = newObject();
+        FedoraObjectDiff diff = new FedoraObjectDiff(obj, obj.copy());
+        Assert.assertTrue(diff.isEmpty());
+        Assert.assertNull(diff.properties());
+    }
+
+    @Test
+    public void properties() {
+        FedoraObject from = newObject();
+        FedoraObject to = from.copy().label("b").lastModifiedDate(new Date(2));
+        FedoraObjectDiff diff = new FedoraObjectDiff(from, to);
+        Assert.assertFalse(diff.isEmpty());
+        Assert.assertEquals("b", diff.properties().label());
+        Assert.assertEquals(2, diff.properties().lastModifiedDate().getTime());
+        Assert.assertEquals(0, diff.properties().datastreams().size());
+        Assert.assertTrue(diff.changedDatastreams().isEmpty());
+        Assert.assertEquals(to, diff.applyTo(from.copy()));
+    }
+
+    @Test
+    public void datastreams() {
+        FedoraObject from = newObject();
+        FedoraObject to = from.copy();
+        to.datastreams().remove("DS1");
+        to.putDatastream(new Datastream("DS3"));
+        to.datastreams().get("DS2").state(State.INACTIVE);
+        FedoraObjectDiff diff = new FedoraObjectDiff(from, to);
+        Assert.assertNull(diff.properties());
+        Assert.assertEquals(1, diff.removedDatastreams().size());
+        Assert.assertTrue(diff.removedDatastreams().contains("DS1"));
+        Assert.assertEquals(1, diff.addedDatastreams().size());
+        Assert.assertEquals(new Datastream("DS3"),
+                diff.addedDatastreams().get("DS3"));
+        Assert.assertEquals(1, diff.changedDatastreams().size());
+        FedoraObjectDiff.DatastreamDiff dsDiff =
+                diff.changedDatastreams().get("DS2");
+        Assert.assertEquals(State.INACTIVE, dsDiff.properties().state());
+        Assert.assertTrue(dsDiff.removedVersions().isEmpty());
+        Assert.assertTrue(dsDiff.addedVersions().isEmpty());
+        Assert.assertTrue(dsDiff.changedVersions().isEmpty());
+        Assert.assertEquals(to, diff.applyTo(from.copy()));
+    }
+
+    @Test
+    public void versions() {
+        FedoraObject from = newObject();
+        FedoraObject to = from.copy();
+        Datastream ds = to.datastreams().get("DS1");
+        ds.versions().remove(ds.versions().last());
+        ds.versions().first().contentDigest(
+                new ContentDigest().type("MD5").hexValue("ff"));
+        ds.addVersion(new Date(3));
+        FedoraObjectDiff diff = new FedoraObjectDiff(from, to);
+        Assert.assertEquals(1, diff.changedDatastreams().size());
+        FedoraObjectDiff.DatastreamDiff dsDiff =
+                diff.changedDatastreams().get("DS1");
+        Assert.assertNull(dsDiff.properties());
+        Assert.assertEquals(1, dsDiff.removedVersions().size());
+        Assert.assertEquals(0, dsDiff.removedVersions().first()
+                .createdDate().getTime());
+        Assert.assertEquals(1, dsDiff.addedVersions().size());
+        Assert.assertEquals(3, dsDiff.addedVersions().first()
+                .createdDate().getTime());
+        Assert.assertEquals(1, dsDiff.changedVersions().size());
+        Assert.assertEquals("ff", dsDiff.changedVersions().first()
+                .contentDigest().hexValue());
+        Assert.assertEquals(to, diff.applyTo(from.copy()));
+    }
+
+    @Test
+    public void unaffectedByLaterChanges() {
+        FedoraObject from = newObject();
+        FedoraObject to = from.copy();
+        to.putDatastream(new Datastream("DS3"));
+        FedoraObjectDiff diff = new FedoraObjectDiff(from, to);
+        to.datastreams().get("DS3").state(State.DELETED);
+        FedoraObject applied = diff.applyTo(from.copy());
+        Assert.assertNull(applied.datastreams().get("DS3").state());
+        applied.datastreams().get("DS3").state(State.ACTIVE);
+        Assert.assertNull(diff.addedDatastreams().get("DS3").state());
+    }
+
+    @Test
+    public void applyToChangedObject() {
+        FedoraObject from = newObject();
+        FedoraObject to = from.copy();
+        to.datastreams().remove("DS1");
+        to.datastreams().get("DS2").versionable(false);
+        FedoraObjectDiff diff = new FedoraObjectDiff(from, to);
+        FedoraObject obj = new FedoraObject();
+        diff.applyTo(obj);
+        Assert.assertEquals(1, obj.datastreams().size());
+        Assert.assertEquals(Boolean.FALSE,
+                obj.datastreams().get("DS2").versionable());
+    }
+
+    @Test (expected=IllegalArgumentException.class)
+    public void datastreamIdsDiffer() {
+        new FedoraObjectDiff.DatastreamDiff(new Datastream("a"),
+                new Datastream("b"));
+    }
+
+    private static FedoraObject newObject() {
+        FedoraObject obj = new FedoraObject().pid("test:1").label("a")
+                .createdDate(new Date(0)).lastModifiedDate(new Date(1));
+        for (int i = 1; i <= 2; i++) {
+            Datastream ds = new Datastream("DS" + i)
+                    .controlGroup(ControlGroup.MANAGED);
+            ds.addVersion(new Date(0)).mimeType("text/plain");
+            ds.addVersion(new Date(1)).mimeType("text/plain");
+            obj.putDatastream(ds);
+        }
+        return obj;
+    }
+
+}
@@ -3,6 +3,7 @@ package com.github.cwilper.fcrepo.dto.core;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.net.URI;
 import java.util.Date;
 
 /**
@@ -59,6 +60,32 @@ public class FedoraObjectTest extends FedoraDTOTest {
         Assert.assertFalse(o1.equals(o2));
     }
 
+    @Test
+    public void nestedEquality() {
+        FedoraObject o1 = new FedoraObject().pid("test:1");
+        o1.putDatastream(new Datastream("a"));
+        o1.datastreams().get("a").addVersion(new Date(0))
+                .formatURI(URI.create("urn:a"));
+        FedoraObject o2 = o1.copy();
+        Assert.assertEquals(o1, o2);
+        Assert.assertEquals(o1.hashCode(), o2.hashCode());
+        o2.datastreams().get("a").versions().first()
+                .formatURI(URI.create("urn:b"));
+        Assert.assertFalse(o1.equals(o2));
+        Assert.assertFalse(o2.equals(o1));
+    }
+
+    @Test
+    public void hashCodeFollowsChanges() {
+        FedoraObject obj = new FedoraObject().pid("test:1");
+        obj.putDatastream(new Datastream("a"));
+        int hash = obj.hashCode();
+        Assert.assertEquals(hash, obj.hashCode());
+        obj.datastreams().get("a").addVersion(new Date(0));
+        Assert.assertFalse(hash == obj.hashCode());
+        Assert.assertEquals(obj.copy().hashCode(), obj.hashCode());
+    }
+
     @Test
     public void pidField() {
         checkStringField(new FedoraObject(), "pid");
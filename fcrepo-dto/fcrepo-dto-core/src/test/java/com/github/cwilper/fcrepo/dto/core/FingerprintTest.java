@@ -0,0 +1,129 @@
+package com.github.cwilper.fcrepo.dto.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Date;
+
+/**
+ * Unit tests for <code>Fingerprint</code>.
+ */
+public class FingerprintTest {
+
+    @Test
+    public void valueOf() {
+        String hex = "0123456789abcdef0123456789abcdef";
+        Fingerprint f = Fingerprint.valueOf(hex);
+        Assert.assertEquals(hex, f.toString());
+        Assert.assertEquals(16, f.bytes().length);
+        Assert.assertEquals(f, Fingerprint.valueOf(hex.toUpperCase()));
+    }
+
+    @Test (expected=IllegalArgumentException.class)
+    public void valueOfWrongLength() {
+        Fingerprint.valueOf("0123");
+    }
+
+    @Test (expected=IllegalArgumentException.class)
+    public void valueOfNotHex() {
+        Fingerprint.valueOf("0123456789abcdef0123456789abcdeg");
+    }
+
+    @Test
+    public void stable() {
+        ContentDigest digest = new ContentDigest().type("MD5").hexValue("ff");
+        Assert.assertEquals("bb024e63ed97c0d83f5b19b65ab1ebba",
+                digest.fingerprint().toString());
+    }
+
+    @Test
+    public void equalInstances() throws IOException {
+        FedoraObject obj = newObject();
+        Assert.assertEquals(obj.fingerprint(), obj.copy().fingerprint());
+        Assert.assertFalse(obj.fingerprint().equals(
+                obj.datastreams().get("DS1").fingerprint()));
+    }
+
+    @Test
+    public void memoized() throws IOException {
+        FedoraObject obj = newObject();
+        Fingerprint f = obj.fingerprint();
+        Assert.assertSame(f, obj.fingerprint());
+        Assert.assertSame(obj.datastreams().get("DS1").fingerprint(),
+                obj.datastreams().get("DS1").fingerprint());
+    }
+
+    @Test
+    public void changedBySetter() throws IOException {
+        FedoraObject obj = newObject();
+        Fingerprint f = obj.fingerprint();
+        obj.label("b");
+        Assert.assertFalse(f.equals(obj.fingerprint()));
+        obj.label("a");
+        Assert.assertEquals(f, obj.fingerprint());
+    }
+
+    @Test
+    public void changedByNestedSetter() throws IOException {
+        FedoraObject obj = newObject();
+        Datastream ds = obj.datastreams().get("DS1");
+        Fingerprint f = obj.fingerprint();
+        Fingerprint dsF = obj.datastreams().get("DS2").fingerprint();
+        ds.versions().first().contentDigest().hexValue("00");
+        Assert.assertFalse(f.equals(obj.fingerprint()));
+        Assert.assertSame(dsF, obj.datastreams().get("DS2").fingerprint());
+    }
+
+    @Test
+    public void changedByCollection() throws IOException {
+        FedoraObject obj = newObject();
+        Fingerprint f = obj.fingerprint();
+        obj.datastreams().get("DS1").versions().first().altIds()
+                .add(URI.create("urn:b"));
+        Fingerprint f2 = obj.fingerprint();
+        Assert.assertFalse(f.equals(f2));
+        obj.datastreams().get("DS1").addVersion(new Date(2));
+        Fingerprint f3 = obj.fingerprint();
+        Assert.assertFalse(f2.equals(f3));
+        obj.datastreams().remove("DS2");
+        Assert.assertFalse(f3.equals(obj.fingerprint()));
+    }
+
+    @Test
+    public void collectionBoundaries() {
+        DatastreamVersion dsv1 = new DatastreamVersion("a", null);
+        dsv1.altIds().add(URI.create("urn:a"));
+        DatastreamVersion dsv2 = new DatastreamVersion("a", null)
+                .formatURI(URI.create("urn:a"));
+        Assert.assertFalse(dsv1.fingerprint().equals(dsv2.fingerprint()));
+    }
+
+    @Test
+    public void inlineXML() throws IOException {
+        InlineXML xml = new InlineXML("<a>x</a>");
+        Assert.assertEquals(xml.fingerprint(),
+                new InlineXML("<a >x</a>").fingerprint());
+        Assert.assertEquals(xml.fingerprint(),
+                new InlineXML("<a>x</a>".getBytes("UTF-8"), 0).fingerprint());
+        Assert.assertFalse(xml.fingerprint().equals(
+                new InlineXML("<a>y</a>").fingerprint()));
+    }
+
+    private static FedoraObject newObject() throws IOException {
+        FedoraObject obj = new FedoraObject().pid("test:1").label("a")
+                .createdDate(new Date(0)).lastModifiedDate(new Date(1));
+        for (int i = 1; i <= 2; i++) {
+            Datastream ds = new Datastream("DS" + i)
+                    .controlGroup(ControlGroup.INLINE_XML);
+            ds.addVersion(new Date(0)).mimeType("text/xml")
+                    .contentDigest(new ContentDigest().type("MD5")
+                            .hexValue("ff"))
+                    .inlineXML(new InlineXML("<a>" + i + "</a>"));
+            obj.putDatastream(ds);
+        }
+        return obj;
+    }
+
+}
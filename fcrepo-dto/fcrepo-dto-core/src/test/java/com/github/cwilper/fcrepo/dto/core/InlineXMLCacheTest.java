@@ -0,0 +1,90 @@
+package com.github.cwilper.fcrepo.dto.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Unit tests for <code>InlineXMLCache</code>.
+ */
+public class InlineXMLCacheTest {
+
+    @Test (expected=IllegalArgumentException.class)
+    public void maxEntriesTooSmall() {
+        new InlineXMLCache(0);
+    }
+
+    @Test
+    public void capacityNotRoundedDown() {
+        Assert.assertEquals(5, new InlineXMLCache(5).capacity());
+        Assert.assertEquals(16, new InlineXMLCache(16).capacity());
+        Assert.assertEquals(20, new InlineXMLCache(20).capacity());
+        Assert.assertEquals(1024, new InlineXMLCache().capacity());
+    }
+
+    @Test
+    public void identicalValuesShared() throws IOException {
+        InlineXMLCache cache = new InlineXMLCache();
+        InlineXML xml = cache.get(Util.getBytes("<a b='c'/>"));
+        Assert.assertEquals(new InlineXML("<a b='c'/>"), xml);
+        Assert.assertSame(xml, cache.get(Util.getBytes("<a b='c'/>")));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void lazyValuesShared() throws IOException {
+        InlineXMLCache cache = new InlineXMLCache();
+        InlineXML xml = cache.getLazy(Util.getBytes("<a b='c'/>"),
+                Long.MAX_VALUE);
+        Assert.assertSame(xml, cache.getLazy(Util.getBytes("<a b='c'/>"),
+                Long.MAX_VALUE));
+        Assert.assertEquals(new InlineXML("<a b='c'/>"), xml);
+        Assert.assertSame(xml, cache.get(Util.getBytes("<a b='c'/>")));
+        Assert.assertNotSame(xml, cache.getLazy(Util.getBytes("<d/>"), 1));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void equivalentValuesNotShared() throws IOException {
+        InlineXMLCache cache = new InlineXMLCache();
+        InlineXML xml1 = cache.get(Util.getBytes("<a b='c'/>"));
+        InlineXML xml2 = cache.get(Util.getBytes("<a b=\"c\"/>"));
+        Assert.assertEquals(xml1, xml2);
+        Assert.assertNotSame(xml1, xml2);
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() throws IOException {
+        InlineXMLCache cache = new InlineXMLCache(2);
+        InlineXML a = cache.get(Util.getBytes("<a/>"));
+        InlineXML b = cache.get(Util.getBytes("<b/>"));
+        Assert.assertSame(a, cache.get(Util.getBytes("<a/>")));
+        cache.get(Util.getBytes("<c/>"));
+        Assert.assertEquals(2, cache.size());
+        Assert.assertSame(a, cache.get(Util.getBytes("<a/>")));
+        Assert.assertNotSame(b, cache.get(Util.getBytes("<b/>")));
+    }
+
+    @Test
+    public void largeValuesNotCached() throws IOException {
+        InlineXMLCache cache = new InlineXMLCache();
+        InlineXML xml = cache.get(Util.getBytes("<a b='c'/>"), 1);
+        Assert.assertNotNull(xml.file());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test (expected=IOException.class)
+    public void malformed() throws IOException {
+        new InlineXMLCache().get(Util.getBytes("<nonClosingElement>"));
+    }
+
+    @Test
+    public void clear() throws IOException {
+        InlineXMLCache cache = new InlineXMLCache();
+        cache.get(Util.getBytes("<a/>"));
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+    }
+}
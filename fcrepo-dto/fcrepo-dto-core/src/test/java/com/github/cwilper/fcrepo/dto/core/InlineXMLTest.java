@@ -3,7 +3,10 @@ package com.github.cwilper.fcrepo.dto.core;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * Unit tests for <code>InlineXML</code>.
@@ -88,4 +91,136 @@ public class InlineXMLTest extends FedoraDTOTest {
         Assert.assertEquals(expected, xml.value());
         Assert.assertArrayEquals(expectedBytes, xml.bytes());
     }
+
+    @Test
+    public void valueDecodedOnDemand() throws IOException {
+        InlineXML xml = new InlineXML("<a b='c'/>");
+        String value = xml.value();
+        Assert.assertEquals("<a b=\"c\"></a>", value);
+        // softly cached, so only decoded again under memory pressure
+        Assert.assertSame(value, xml.value());
+        Assert.assertFalse(xml.equals(value));
+    }
+
+    @Test
+    public void lazy() throws IOException {
+        byte[] original = Util.getBytes(" <a b='c'>x</a> ");
+        InlineXML lazy = InlineXML.lazy(original, Long.MAX_VALUE);
+        InlineXML eager = new InlineXML(original);
+
+        // the original is written as-is, without canonicalizing it
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        lazy.writeTo(sink);
+        Assert.assertArrayEquals(original, sink.toByteArray());
+
+        Assert.assertEquals(eager, lazy);
+        Assert.assertEquals(eager.hashCode(), lazy.hashCode());
+        Assert.assertTrue(lazy.canonical());
+        Assert.assertArrayEquals(eager.bytes(), lazy.bytes());
+        Assert.assertEquals(eager.size(), lazy.size());
+
+        // once canonicalized, the original is released
+        sink.reset();
+        lazy.writeTo(sink);
+        Assert.assertArrayEquals(eager.bytes(), sink.toByteArray());
+    }
+
+    @Test
+    public void lazySpillReleasesOriginal() throws IOException {
+        byte[] original = Util.getBytes("<a b='c'/>");
+        InlineXML lazy = InlineXML.lazy(original, 1);
+        Assert.assertNotNull(lazy.file());
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        lazy.writeTo(sink);
+        Assert.assertEquals("<a b=\"c\"></a>", sink.toString("UTF-8"));
+    }
+
+    @Test
+    public void lazyNotEmbeddable() throws IOException {
+        String[] originals = new String[] {
+                "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<a:x "
+                        + "xmlns:a=\"urn:a\"/>",
+                "<!DOCTYPE a>\n<a:x xmlns:a=\"urn:a\"/>",
+                "<a:x xmlns:a=\"urn:a\"><!-- comment --></a:x>" };
+        for (String original: originals) {
+            InlineXML lazy = InlineXML.lazy(Util.getBytes(original),
+                    Long.MAX_VALUE);
+            ByteArrayOutputStream sink = new ByteArrayOutputStream();
+            lazy.writeTo(sink);
+            Assert.assertEquals("<a:x xmlns:a=\"urn:a\"></a:x>",
+                    sink.toString("UTF-8"));
+        }
+    }
+
+    @Test (expected=IOException.class)
+    public void lazyMalformed() throws IOException {
+        InlineXML.lazy(Util.getBytes("<nonClosingElement>"), Long.MAX_VALUE);
+    }
+
+    @Test (expected=IOException.class)
+    public void lazyUnboundPrefix() throws IOException {
+        InlineXML.lazy(Util.getBytes("<dc:title>x</dc:title>"),
+                Long.MAX_VALUE);
+    }
+
+    @Test
+    public void spillToFile() throws IOException {
+        String expected = "<a b=\"c\"></a>";
+        byte[] expectedBytes = Util.getBytes(expected);
+
+        // at the limit, kept in memory
+        InlineXML xml = new InlineXML(Util.getBytes("<a b='c'/>"),
+                expectedBytes.length);
+        Assert.assertNull(xml.file());
+
+        // over the limit, kept in a file
+        InlineXML spilled = new InlineXML(Util.getBytes("<a b='c'/>"),
+                expectedBytes.length - 1);
+        Assert.assertNotNull(spilled.file());
+        Assert.assertTrue(spilled.file().exists());
+        Assert.assertTrue(spilled.canonical());
+        Assert.assertEquals(expectedBytes.length, spilled.size());
+        Assert.assertEquals(expected, spilled.value());
+        Assert.assertArrayEquals(expectedBytes, spilled.bytes());
+        Assert.assertEquals(xml, spilled);
+        Assert.assertEquals(xml.hashCode(), spilled.hashCode());
+
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        spilled.writeTo(sink);
+        Assert.assertArrayEquals(expectedBytes, sink.toByteArray());
+
+        InputStream source = spilled.openStream();
+        try {
+            sink.reset();
+            int b;
+            while ((b = source.read()) != -1) sink.write(b);
+        } finally {
+            source.close();
+        }
+        Assert.assertArrayEquals(expectedBytes, sink.toByteArray());
+    }
+
+    @Test
+    public void spillNormalizedToFile() throws IOException {
+        // canonicalization fails partway, after passing the limit
+        InlineXML spilled = new InlineXML(
+                Util.getBytes("<a xmlns='b'></a>"), 1);
+        Assert.assertNotNull(spilled.file());
+        Assert.assertFalse(spilled.canonical());
+        Assert.assertEquals("<a xmlns=\"b\"/>", spilled.value());
+        Assert.assertEquals(spilled.file().length(), spilled.size());
+    }
+
+    @Test
+    public void release() throws IOException {
+        InlineXML spilled = new InlineXML(Util.getBytes("<a b='c'/>"), 1);
+        File file = spilled.file();
+        Assert.assertTrue(file.exists());
+        spilled.release();
+        Assert.assertFalse(file.exists());
+        spilled.release();
+
+        // nothing to delete
+        new InlineXML("<a/>").release();
+    }
 }
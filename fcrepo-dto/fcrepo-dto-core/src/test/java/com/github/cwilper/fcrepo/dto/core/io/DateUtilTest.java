@@ -0,0 +1,99 @@
+package com.github.cwilper.fcrepo.dto.core.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+public class DateUtilTest {
+
+    @Test
+    public void nulls() {
+        Assert.assertNull(DateUtil.toDate(null));
+        Assert.assertNull(DateUtil.toString(null));
+    }
+
+    @Test
+    public void preferredFormat() {
+        Date date = DateUtil.toDate("2011-01-16T08:27:01.002Z");
+        Assert.assertEquals(1295166421002L, date.getTime());
+        Assert.assertEquals("2011-01-16T08:27:01.002Z",
+                DateUtil.toString(date));
+    }
+
+    @Test
+    public void sameAsSimpleDateFormat() {
+        String[] values = new String[] {
+                "2011-01-16T08:27:01.002Z", "2011-01-16T08:27:01.02Z",
+                "2011-01-16T08:27:01.2Z", "2011-01-16T08:27:01Z",
+                "2011-01-16T08:27:01.02", "2011-01-16T08:27:01.2",
+                "2011-01-16T08:27:01", "2011-01-16T08:27:01.123",
+                "2011-01-16T08:27:01.1234Z", "2011-01-16T08:27:01.Z",
+                "2011-01-16T08:27:01+05:00", "2011-01-16T08:27:01Zjunk",
+                "2012-02-29T00:00:00Z", "2011-02-29T00:00:00Z",
+                "2011-13-01T00:00:00Z", "2011-01-16T24:00:00Z",
+                "2011-01-16T23:59:60Z", "1970-01-01T00:00:00.000Z",
+                "1969-12-31T23:59:59.999Z", "1583-01-01T00:00:00.000Z",
+                "1582-10-15T00:00:00.000Z", "0001-01-01T00:00:00.000Z",
+                "9999-12-31T23:59:59.999Z", "2011-1-16T08:27:01Z",
+                "2011-01-16 08:27:01Z", "2011-01-16", "", "garbage"
+        };
+        for (String value: values) {
+            Assert.assertEquals(value, legacyToDate(value),
+                    DateUtil.toDate(value));
+        }
+    }
+
+    @Test
+    public void toStringSameAsSimpleDateFormat() {
+        Random random = new Random(42);
+        long[] times = new long[] {
+                0, -1, 1, Long.MIN_VALUE / 2, Long.MAX_VALUE / 2,
+                -12219292800000L, -12219292800001L, 253402300799999L,
+                253402300800000L
+        };
+        for (long time: times) {
+            assertSameString(time);
+        }
+        for (int i = 0; i < 10000; i++) {
+            long time = (long) (random.nextDouble() * 1000 * 253402300800L
+                    - 500L * 253402300800L);
+            assertSameString(time);
+            assertSameString(time);
+        }
+    }
+
+    @Test
+    public void roundTrip() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            long time = (long) (random.nextDouble() * 253402300800000L);
+            Date date = new Date(time);
+            Assert.assertEquals(date, DateUtil.toDate(DateUtil.toString(date)));
+        }
+    }
+
+    private static void assertSameString(long time) {
+        SimpleDateFormat format = new SimpleDateFormat(
+                DateUtil.PREFERRED_DATE_FORMAT);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Date date = new Date(time);
+        Assert.assertEquals(format.format(date), DateUtil.toString(date));
+    }
+
+    private static Date legacyToDate(String value) {
+        SimpleDateFormat format = new SimpleDateFormat();
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        for (String pattern: DateUtil.ALLOWED_DATE_FORMATS) {
+            format.applyPattern(pattern);
+            Date date = format.parse(value, new ParsePosition(0));
+            if (date != null) return date;
+        }
+        return null;
+    }
+
+}
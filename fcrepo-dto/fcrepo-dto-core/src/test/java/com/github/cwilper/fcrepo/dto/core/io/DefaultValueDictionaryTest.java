@@ -0,0 +1,78 @@
+package com.github.cwilper.fcrepo.dto.core.io;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+public class DefaultValueDictionaryTest {
+
+    @Test
+    public void nullValues() throws URISyntaxException {
+        ValueDictionary dictionary = new DefaultValueDictionary();
+        Assert.assertNull(dictionary.getString(null));
+        Assert.assertNull(dictionary.getURI(null));
+    }
+
+    @Test
+    public void sameStringInstance() {
+        ValueDictionary dictionary = new DefaultValueDictionary();
+        String first = new String("text/xml");
+        String second = new String("text/xml");
+        Assert.assertSame(first, dictionary.getString(first));
+        Assert.assertSame(first, dictionary.getString(second));
+    }
+
+    @Test
+    public void sameURIInstance() throws URISyntaxException {
+        ValueDictionary dictionary = new DefaultValueDictionary();
+        URI uri = dictionary.getURI("info:fedora/fedora-system:FedoraDC");
+        Assert.assertEquals(new URI("info:fedora/fedora-system:FedoraDC"),
+                uri);
+        Assert.assertSame(uri,
+                dictionary.getURI("info:fedora/fedora-system:FedoraDC"));
+    }
+
+    @Test (expected=URISyntaxException.class)
+    public void malformedURI() throws URISyntaxException {
+        new DefaultValueDictionary().getURI("not a uri");
+    }
+
+    @Test
+    public void bounded() {
+        ValueDictionary dictionary = new DefaultValueDictionary(16);
+        String first = new String("value0");
+        dictionary.getString(first);
+        for (int i = 1; i < 1000; i++) {
+            dictionary.getString("value" + i);
+        }
+        Assert.assertNotSame(first, dictionary.getString(new String("value0")));
+    }
+
+    @Test
+    public void capacityNotRounded() {
+        Assert.assertEquals(2, new DefaultValueDictionary(2).capacity());
+        Assert.assertEquals(20, new DefaultValueDictionary(20).capacity());
+        Assert.assertEquals(4096, new DefaultValueDictionary().capacity());
+    }
+
+    @Test
+    public void leastRecentlyUsedEvicted() {
+        ValueDictionary dictionary = new DefaultValueDictionary(2);
+        String a = new String("a");
+        String b = new String("b");
+        dictionary.getString(a);
+        dictionary.getString(b);
+        Assert.assertSame(a, dictionary.getString(new String("a")));
+        dictionary.getString("c");
+        Assert.assertSame(a, dictionary.getString(new String("a")));
+        Assert.assertNotSame(b, dictionary.getString(new String("b")));
+    }
+
+    @Test (expected=IllegalArgumentException.class)
+    public void maxEntriesTooSmall() {
+        new DefaultValueDictionary(0);
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.github.cwilper.fcrepo.dto.core.io;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+public class MappedInputStreamTest {
+
+    private File file;
+    private byte[] data;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("fcrepo-dto", null);
+        data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        FileUtils.writeByteArrayToFile(file, data);
+    }
+
+    @After
+    public void tearDown() {
+        Assert.assertTrue(file.delete());
+    }
+
+    @Test
+    public void readAcrossWindows() throws IOException {
+        for (int windowSize = 1; windowSize < 1100; windowSize += 99) {
+            InputStream in = new MappedInputStream(openChannel(), windowSize);
+            try {
+                Assert.assertArrayEquals(data, IOUtils.toByteArray(in));
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    @Test
+    public void readSingleBytes() throws IOException {
+        InputStream in = new MappedInputStream(openChannel(), 7);
+        try {
+            for (int i = 0; i < data.length; i++) {
+                Assert.assertEquals(data[i] & 0xff, in.read());
+            }
+            Assert.assertEquals(-1, in.read());
+            Assert.assertEquals(-1, in.read(new byte[1], 0, 1));
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void readFromChannelPosition() throws IOException {
+        FileChannel channel = openChannel();
+        channel.position(600);
+        InputStream in = new MappedInputStream(channel, 64);
+        try {
+            Assert.assertEquals(400, in.available());
+            Assert.assertArrayEquals(Arrays.copyOfRange(data, 600, 1000),
+                    IOUtils.toByteArray(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void skip() throws IOException {
+        InputStream in = new MappedInputStream(openChannel(), 64);
+        try {
+            Assert.assertEquals(0, in.read());
+            Assert.assertEquals(10, in.skip(10));
+            Assert.assertEquals(11, in.read());
+            Assert.assertEquals(500, in.skip(500));
+            Assert.assertEquals(data[512] & 0xff, in.read());
+            Assert.assertEquals(487, in.available());
+            Assert.assertEquals(487, in.skip(1000));
+            Assert.assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void closeClosesChannel() throws IOException {
+        FileChannel channel = openChannel();
+        new MappedInputStream(channel).close();
+        Assert.assertFalse(channel.isOpen());
+    }
+
+    @Test
+    public void openSmallIsNotMapped() throws IOException {
+        InputStream in = MappedInputStream.open(openChannel());
+        try {
+            Assert.assertFalse(in instanceof MappedInputStream);
+            Assert.assertArrayEquals(data, IOUtils.toByteArray(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    private FileChannel openChannel() throws IOException {
+        return new FileInputStream(file).getChannel();
+    }
+
+}
@@ -0,0 +1,235 @@
+package com.github.cwilper.fcrepo.dto.core.io;
+
+import com.github.cwilper.fcrepo.dto.core.FedoraObject;
+import com.github.cwilper.ttff.AbstractSink;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TreeReaderTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("fcrepo-dto", null);
+        Assert.assertTrue(dir.delete());
+        write("a/1", "test:1");
+        write("a/2", "test:2");
+        write("a/b/3", "test:3");
+        write("c/4", "test:4");
+        write("5", "test:5");
+        Assert.assertTrue(new File(dir, "empty").mkdir());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void readAll() throws IOException {
+        assertPids("[test:1, test:2, test:3, test:4, test:5]",
+                new TreeReader(new PidReader(0)));
+    }
+
+    @Test
+    public void readAllSingleThread() throws IOException {
+        TreeReader treeReader = new TreeReader(new PidReader(0));
+        treeReader.setThreads(1);
+        treeReader.setMaxInFlight(1);
+        assertPids("[test:1, test:2, test:3, test:4, test:5]", treeReader);
+    }
+
+    @Test
+    public void readFiltered() throws IOException {
+        TreeReader treeReader = new TreeReader(new PidReader(0));
+        treeReader.setFileFilter(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return !file.getName().equals("3");
+            }
+        });
+        assertPids("[test:1, test:2, test:4, test:5]", treeReader);
+    }
+
+    @Test
+    public void maxInFlightRespected() throws IOException {
+        final PidReader reader = new PidReader(5);
+        TreeReader treeReader = new TreeReader(reader);
+        treeReader.setThreads(4);
+        treeReader.setMaxInFlight(2);
+        try {
+            treeReader.readObjects(dir, new AbstractSink<FedoraObject>() {
+                @Override
+                public void put(FedoraObject obj) {
+                    sleep(20);
+                    reader.inFlight.decrementAndGet();
+                }
+            });
+        } finally {
+            treeReader.close();
+        }
+        Assert.assertTrue(reader.maxInFlight.get() <= 2);
+    }
+
+    @Test
+    public void failFast() throws IOException {
+        write("a/b/bad", "");
+        TreeReader treeReader = new TreeReader(new PidReader(0));
+        try {
+            treeReader.readObjects(dir, new PidSink());
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().endsWith("bad"));
+        } finally {
+            treeReader.close();
+        }
+    }
+
+    @Test
+    public void skipErrors() throws IOException {
+        write("a/b/bad", "");
+        TreeReader treeReader = new TreeReader(new PidReader(0));
+        treeReader.setFailFast(false);
+        assertPids("[test:1, test:2, test:3, test:4, test:5]", treeReader);
+    }
+
+    @Test
+    public void readViaFile() throws IOException {
+        final AtomicInteger fileReads = new AtomicInteger();
+        assertPids("[test:1, test:2, test:3, test:4, test:5]",
+                new TreeReader(new FilePidReader(fileReads)));
+        Assert.assertEquals(5, fileReads.get());
+    }
+
+    @Test (expected=IOException.class)
+    public void notADirectory() throws IOException {
+        new TreeReader(new PidReader(0)).readObjects(new File(dir, "5"),
+                new PidSink());
+    }
+
+    private void assertPids(String expected, TreeReader treeReader)
+            throws IOException {
+        PidSink sink = new PidSink();
+        try {
+            long count = treeReader.readObjects(dir, sink);
+            Assert.assertEquals(sink.pids.size(), count);
+            Assert.assertEquals(expected, sink.pids.toString());
+        } finally {
+            treeReader.close();
+        }
+    }
+
+    private void write(String path, String content) throws IOException {
+        FileUtils.writeStringToFile(new File(dir, path), content, "UTF-8");
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // collects the pids of all objects put to it
+    private static class PidSink extends AbstractSink<FedoraObject> {
+
+        final Set<String> pids = new TreeSet<String>();
+
+        @Override
+        public void put(FedoraObject obj) {
+            pids.add(obj.pid());
+        }
+    }
+
+    // reads objects whose serialized form is just the pid,
+    // tracking how many have been read but not yet consumed
+    private static class PidReader implements DTOReader {
+
+        final AtomicInteger inFlight;
+        final AtomicInteger maxInFlight;
+        final long delay;
+
+        PidReader(long delay) {
+            this(delay, new AtomicInteger(), new AtomicInteger());
+        }
+
+        private PidReader(long delay,
+                          AtomicInteger inFlight,
+                          AtomicInteger maxInFlight) {
+            this.delay = delay;
+            this.inFlight = inFlight;
+            this.maxInFlight = maxInFlight;
+        }
+
+        @Override
+        public DTOReader getInstance() {
+            return new PidReader(delay, inFlight, maxInFlight);
+        }
+
+        @Override
+        public FedoraObject readObject(InputStream source) throws IOException {
+            try {
+                String pid = IOUtils.toString(source, "UTF-8");
+                if (pid.length() == 0) throw new IOException("No pid");
+                int n = inFlight.incrementAndGet();
+                synchronized (maxInFlight) {
+                    if (n > maxInFlight.get()) maxInFlight.set(n);
+                }
+                sleep(delay);
+                return new FedoraObject().pid(pid);
+            } finally {
+                IOUtils.closeQuietly(source);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // reads objects whose serialized form is just the pid,
+    // counting how many were read via readObject(File)
+    private static class FilePidReader extends ContentHandlingDTOReader {
+
+        final AtomicInteger fileReads;
+
+        FilePidReader(AtomicInteger fileReads) {
+            this.fileReads = fileReads;
+        }
+
+        @Override
+        public DTOReader getInstance() {
+            return new FilePidReader(fileReads);
+        }
+
+        @Override
+        public FedoraObject readObject(File file) throws IOException {
+            fileReads.incrementAndGet();
+            return super.readObject(file);
+        }
+
+        @Override
+        public FedoraObject readObject(InputStream source) throws IOException {
+            try {
+                return new FedoraObject().pid(
+                        IOUtils.toString(source, "UTF-8"));
+            } finally {
+                IOUtils.closeQuietly(source);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.github.cwilper.fcrepo.dto.core.io;
+
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * Checks that <code>XMLCanonicalizer</code> produces exactly the same
+ * output as the Apache XML Security c14n11 implementation.
+ */
+public class XMLCanonicalizerTest {
+
+    static {
+        org.apache.xml.security.Init.init();
+    }
+
+    @Test
+    public void declarationAndWhitespaceOutsideRoot() throws Exception {
+        assertSameAsXMLSec("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + " <!-- leading --> \n<doc>\n  <!-- comment -->\n"
+                + "  <element\n      ATTRIBUTE=\"value \"/>\n</doc> "
+                + "<!-- trailing --> ");
+    }
+
+    @Test
+    public void emptyElements() throws Exception {
+        assertSameAsXMLSec("<a><b/><c></c><d> </d></a>");
+    }
+
+    @Test
+    public void textEscaping() throws Exception {
+        assertSameAsXMLSec("<a>&amp; &lt; &gt; \" ' &#13; &#9; \r\n"
+                + " <![CDATA[<&>]]> é中</a>");
+    }
+
+    @Test
+    public void supplementaryCharacters() throws Exception {
+        // xmlsec 1.4.3 encodes each half of a surrogate pair separately,
+        // which isn't valid UTF-8, so this differs on purpose
+        Assert.assertEquals("<a>\uD83D\uDE00</a>",
+                c14n("<a>&#x1F600;</a>".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void attributeEscaping() throws Exception {
+        assertSameAsXMLSec("<a b=\"&amp; &lt; &gt; &quot; ' &#9;&#10;&#13;"
+                + " \t\n\r x\" c='\"'/>");
+    }
+
+    @Test
+    public void attributeOrder() throws Exception {
+        assertSameAsXMLSec("<a xmlns:z='urn:a' xmlns:b='urn:b' z:c='1'"
+                + " b:a='2' z:a='3' c='4' b='5' xml:lang='en' a='6'"
+                + " xmlns='urn:d' B='7'/>");
+    }
+
+    @Test
+    public void namespaceOrder() throws Exception {
+        assertSameAsXMLSec("<p:a xmlns:z='urn:z' xmlns:p='urn:p'"
+                + " xmlns='urn:d' xmlns:a='urn:a' xmlns:Z='urn:Z'/>");
+    }
+
+    @Test
+    public void superfluousNamespaces() throws Exception {
+        assertSameAsXMLSec("<a xmlns='urn:a' xmlns:p='urn:p'>"
+                + "<b xmlns='urn:a' xmlns:p='urn:p'>"
+                + "<c xmlns:p='urn:q'><d xmlns:p='urn:p'/></c>"
+                + "</b></a>");
+    }
+
+    @Test
+    public void defaultNamespaceUndeclared() throws Exception {
+        assertSameAsXMLSec("<a xmlns=''><b xmlns='urn:b'><c xmlns=''>"
+                + "<d xmlns=''/></c></b></a>");
+    }
+
+    @Test
+    public void unusedAndXMLNamespaces() throws Exception {
+        assertSameAsXMLSec("<a xmlns:unused='urn:u'"
+                + " xmlns:xml='http://www.w3.org/XML/1998/namespace'>"
+                + "<b xml:space='preserve'/></a>");
+    }
+
+    @Test
+    public void processingInstructions() throws Exception {
+        assertSameAsXMLSec("<?before  data ?><?empty?>\n<a><?in x&#13;?>"
+                + "<?in2?></a><?after data?>\n<?after2?>");
+    }
+
+    @Test
+    public void internalSubset() throws Exception {
+        assertSameAsXMLSec("<!DOCTYPE a [\n<!ENTITY e 'entity &amp; text'>"
+                + "\n<!ATTLIST a d CDATA 'default'>\n]>\n<a>&e;</a>");
+    }
+
+    @Test
+    public void otherEncoding() throws Exception {
+        byte[] xml = "<?xml version='1.0' encoding='ISO-8859-1'?><a>é</a>"
+                .getBytes("ISO-8859-1");
+        Assert.assertEquals(xmlsec(xml), c14n(xml));
+    }
+
+    @Test
+    public void typicalInlineXML() throws Exception {
+        assertSameAsXMLSec("<oai_dc:dc"
+                + " xmlns:oai_dc=\"http://www.openarchives.org/OAI/2.0/oai_dc/\""
+                + " xmlns:dc=\"http://purl.org/dc/elements/1.1/\""
+                + " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+                + " xsi:schemaLocation=\"http://www.openarchives.org/OAI/2.0/"
+                + "oai_dc/ http://www.openarchives.org/OAI/2.0/oai_dc.xsd\">\n"
+                + "  <dc:title>Title</dc:title>\n"
+                + "  <dc:identifier>test:1</dc:identifier>\n"
+                + "</oai_dc:dc>");
+    }
+
+    @Test
+    public void rdf() throws Exception {
+        assertSameAsXMLSec("<rdf:RDF"
+                + " xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\""
+                + " xmlns:fedora-model=\"info:fedora/fedora-system:def/model#\">"
+                + "<rdf:Description rdf:about=\"info:fedora/test:1\">"
+                + "<fedora-model:hasModel rdf:resource=\"info:fedora/cm:1\"/>"
+                + "</rdf:Description></rdf:RDF>");
+    }
+
+    @Test (expected=CanonicalizationException.class)
+    public void relativeNamespace() throws Exception {
+        XMLCanonicalizer.canonicalize("<a xmlns='relative'/>".getBytes(
+                "UTF-8"));
+    }
+
+    @Test (expected=CanonicalizationException.class)
+    public void relativeNamespaceStartingWithColon() throws Exception {
+        XMLCanonicalizer.canonicalize("<a xmlns:p=':x'/>".getBytes("UTF-8"));
+    }
+
+    @Test
+    public void malformed() throws Exception {
+        String[] inputs = new String[] {
+                "", "<a>", "<a></b>", "<a/><b/>", "<a/>text", "<p:a/>",
+                "<a b='1' b='2'/>", "<a>&undeclared;</a>",
+                "<a xmlns='relative'><b></a>"
+        };
+        for (String input: inputs) {
+            try {
+                XMLCanonicalizer.canonicalize(input.getBytes("UTF-8"));
+                Assert.fail("Expected failure: " + input);
+            } catch (CanonicalizationException e) {
+                Assert.fail("Expected not well-formed: " + input);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    private static void assertSameAsXMLSec(String input) throws Exception {
+        byte[] xml = input.getBytes("UTF-8");
+        Assert.assertEquals(xmlsec(xml), c14n(xml));
+    }
+
+    private static String xmlsec(byte[] xml) throws Exception {
+        return new String(Canonicalizer.getInstance(
+                Canonicalizer.ALGO_ID_C14N11_OMIT_COMMENTS).canonicalize(xml),
+                "UTF-8");
+    }
+
+    private static String c14n(byte[] xml) throws Exception {
+        return new String(XMLCanonicalizer.canonicalize(xml), "UTF-8");
+    }
+}
@@ -3,7 +3,11 @@ package com.github.cwilper.fcrepo.dto.core.io;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 
 public class XMLUtilTest {
 
@@ -28,6 +32,51 @@ public class XMLUtilTest {
         assertCanonical(input, expectedOutput);
     }
 
+    @Test
+    public void canonicalizeStreamToDigest() throws Exception {
+        byte[] input = "<a b='c'><!-- comment --><d/></a>".getBytes("UTF-8");
+        MessageDigest expected = MessageDigest.getInstance("SHA-1");
+        expected.update(XMLUtil.canonicalize(input));
+        MessageDigest actual = MessageDigest.getInstance("SHA-1");
+        OutputStream sink = new DigestOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        }, actual);
+        XMLUtil.canonicalize(new ByteArrayInputStream(input), sink);
+        sink.flush();
+        Assert.assertArrayEquals(expected.digest(), actual.digest());
+    }
+
+    @Test (expected=IOException.class)
+    public void canonicalizeMalformed() throws Exception {
+        XMLUtil.canonicalize("<a>".getBytes("UTF-8"));
+    }
+
+    @Test
+    public void prettyPrint() throws Exception {
+        byte[] input = " \n<a x='1'><b></b>\n\n<c>text</c></a>\n "
+                .getBytes("UTF-8");
+        Assert.assertEquals("<a x=\"1\">\n  <b/>\n  <c>text</c>\n</a>",
+                new String(XMLUtil.prettyPrint(input, true), "UTF-8"));
+        String withDeclaration = new String(XMLUtil.prettyPrint(input, false),
+                "UTF-8");
+        Assert.assertTrue(withDeclaration.startsWith("<?xml"));
+        Assert.assertTrue(withDeclaration.endsWith("</a>"));
+    }
+
+    @Test
+    public void prettyPrintAfterFailure() throws Exception {
+        try {
+            XMLUtil.prettyPrint("<a>".getBytes("UTF-8"), true);
+            Assert.fail();
+        } catch (IOException e) {
+            // expected
+        }
+        Assert.assertEquals("<a/>", new String(XMLUtil.prettyPrint(
+                "<a></a>".getBytes("UTF-8"), true), "UTF-8"));
+    }
+
     private static void assertCanonical(String input, String expectedOutput)
             throws IOException {
         Assert.assertEquals(expectedOutput, new String(XMLUtil.canonicalize(
@@ -0,0 +1,445 @@
+package com.github.cwilper.fcrepo.dto.foxml;
+
+import com.fasterxml.aalto.AsyncByteBufferFeeder;
+import com.fasterxml.aalto.AsyncXMLInputFactory;
+import com.fasterxml.aalto.AsyncXMLStreamReader;
+import com.github.cwilper.fcrepo.dto.core.FedoraObject;
+import com.github.cwilper.fcrepo.dto.core.io.DTOVisitor;
+import com.github.cwilper.fcrepo.dto.core.io.StAXBackend;
+import com.github.cwilper.fcrepo.dto.core.io.XMLUtil;
+import com.github.cwilper.ttff.Sink;
+import org.apache.commons.io.IOUtils;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads Fedora Object XML that arrives in chunks, such as from a
+ * non-blocking network channel, without a thread waiting for the rest of
+ * the input.
+ * <p>
+ * Each {@link Session} is fed <code>ByteBuffer</code>s as they arrive. The
+ * bytes are scanned by Aalto's non-blocking parser, and each
+ * <code>digitalObject</code> element is recorded as it goes by, escaping
+ * whatever the parser would otherwise change when reading it again, such
+ * as line breaks within attribute values. As soon as
+ * one is complete, it is read by the underlying {@link FOXMLReader}, in
+ * the thread that fed the last chunk, and the result is passed on. Results
+ * are the same as those of the underlying reader, with the same
+ * configuration, and as with {@link FOXMLReader#readObjects}, any number of
+ * objects may be wrapped in an enclosing element.
+ * <p>
+ * Only the object currently arriving is held in memory, so a session's
+ * footprint is bounded by the size of the largest object it is fed, rather
+ * than by that of the whole stream. Since that includes any embedded
+ * binary content, objects larger than a configurable
+ * {@link #setMaxObjectSize(long) maximum size} fail the session that is
+ * reading them.
+ * <p>
+ * Once configured, the underlying reader may be shared by any number of
+ * sessions, and each session may be fed by a different thread over its
+ * lifetime, as long as it isn't fed by two at once.
+ * <p>
+ * <b>NOTE:</b> This requires Aalto (<code>com.fasterxml:aalto-xml</code>)
+ * on the classpath.
+ */
+public class AsyncFOXMLReader {
+
+    /** 67108864 (64 MiB) */
+    public static final long DEFAULT_MAX_OBJECT_SIZE = 64 * 1024 * 1024;
+
+    // capture buffers larger than this aren't kept between objects
+    private static final int MAX_RETAINED_CAPTURE_SIZE = 64 * 1024;
+
+    private final FOXMLReader reader;
+    private final AsyncXMLInputFactory inputFactory;
+
+    private long maxObjectSize = DEFAULT_MAX_OBJECT_SIZE;
+
+    /**
+     * Creates an instance.
+     *
+     * @param reader the reader to read each object with, never
+     *        <code>null</code>. It should not be reconfigured while this
+     *        instance is in use.
+     * @throws NullPointerException if the reader is null.
+     * @throws IllegalStateException if Aalto is not available.
+     */
+    public AsyncFOXMLReader(FOXMLReader reader) {
+        if (reader == null) throw new NullPointerException();
+        this.reader = reader;
+        this.inputFactory = (AsyncXMLInputFactory)
+                StAXBackend.AALTO.getInputFactory();
+    }
+
+    /**
+     * Sets the maximum size of a single object, as serialized for the
+     * underlying reader. A session fails as soon as the object it is
+     * reading grows beyond this, so that one large or hostile stream can't
+     * exhaust the heap. Sessions that have already started are not
+     * affected.
+     *
+     * @param maxObjectSize the new value, in bytes.
+     */
+    public void setMaxObjectSize(long maxObjectSize) {
+        this.maxObjectSize = maxObjectSize;
+    }
+
+    /**
+     * Gets the maximum size of a single object.
+     *
+     * @return the value, in bytes.
+     */
+    public long getMaxObjectSize() {
+        return maxObjectSize;
+    }
+
+    /**
+     * Starts reading a new stream, passing the parts of each object to the
+     * given visitor as with
+     * {@link FOXMLReader#readObject(java.io.InputStream, DTOVisitor)}.
+     *
+     * @param visitor the visitor to call back, never <code>null</code>.
+     * @return the session, to be fed the content of the stream.
+     * @throws NullPointerException if the visitor is null.
+     */
+    public Session newSession(DTOVisitor visitor) {
+        if (visitor == null) throw new NullPointerException();
+        return new Session(visitor, null);
+    }
+
+    /**
+     * Starts reading a new stream, passing each object to the given sink
+     * once it has been completely read.
+     *
+     * @param sink the sink to put the objects in, never <code>null</code>.
+     *        It will not be closed by the session.
+     * @return the session, to be fed the content of the stream.
+     * @throws NullPointerException if the sink is null.
+     */
+    public Session newSession(Sink<FedoraObject> sink) {
+        if (sink == null) throw new NullPointerException();
+        return new Session(null, sink);
+    }
+
+    /**
+     * The state of a single stream being read. Instances are not
+     * thread-safe.
+     */
+    public class Session {
+
+        private final DTOVisitor visitor;
+        private final Sink<FedoraObject> sink;
+        private final AsyncXMLStreamReader<AsyncByteBufferFeeder> r;
+        private final long maxObjectSize;
+
+        // namespaces declared by each open element outside of an object
+        private final List<Map<String, String>> namespaces =
+                new ArrayList<Map<String, String>>();
+
+        private CaptureBuffer capture = new CaptureBuffer();
+        private Writer w;
+        private int objectDepth;
+        private long objectCount;
+        private boolean finished;
+
+        private Session(DTOVisitor visitor, Sink<FedoraObject> sink) {
+            this.visitor = visitor;
+            this.sink = sink;
+            this.r = inputFactory.createAsyncForByteBuffer();
+            this.maxObjectSize = AsyncFOXMLReader.this.maxObjectSize;
+        }
+
+        /**
+         * Feeds the next chunk of the stream, reading any objects it
+         * completes before returning. The chunk is consumed in full, and
+         * its position is advanced to its limit, so the buffer may be
+         * reused as soon as this method returns.
+         *
+         * @param buffer the chunk, possibly empty.
+         * @throws IOException if the stream is malformed, an object is
+         *         larger than the maximum size, or an object could not be
+         *         read. The session is finished in this case.
+         * @throws IllegalStateException if the session is finished.
+         */
+        public void feed(ByteBuffer buffer) throws IOException {
+            if (finished) throw new IllegalStateException("Session finished");
+            if (!buffer.hasRemaining()) return;
+            try {
+                r.getInputFeeder().feedInput(buffer);
+                drain();
+                buffer.position(buffer.limit());
+            } catch (XMLStreamException e) {
+                close();
+                throw new IOException(e);
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * Signals that the whole stream has been fed, and finishes the
+         * session.
+         *
+         * @return the number of objects read from the stream.
+         * @throws IOException if the stream ended prematurely or is
+         *         otherwise malformed.
+         * @throws IllegalStateException if the session is finished.
+         */
+        public long endOfInput() throws IOException {
+            if (finished) throw new IllegalStateException("Session finished");
+            try {
+                r.getInputFeeder().endOfInput();
+                drain();
+                if (r.getEventType() != XMLStreamConstants.END_DOCUMENT) {
+                    throw new IOException("Premature end of input");
+                }
+                return objectCount;
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Finishes the session without waiting for the rest of the stream,
+         * discarding any partially received object. This may be called
+         * at any time, and has no effect if the session is already
+         * finished.
+         */
+        public void close() {
+            if (finished) return;
+            finished = true;
+            IOUtils.closeQuietly(w);
+            XMLUtil.closeQuietly(r);
+            capture = null;
+        }
+
+        // handles events until more input is needed or the document ends
+        private void drain() throws IOException, XMLStreamException {
+            while (r.hasNext()) {
+                int code = r.next();
+                if (code == AsyncXMLStreamReader.EVENT_INCOMPLETE) return;
+                if (objectDepth > 0) {
+                    record(code);
+                } else if (code == XMLStreamConstants.START_ELEMENT) {
+                    if (r.getLocalName().equals(Constants.digitalObject)) {
+                        startObject();
+                    } else {
+                        namespaces.add(getDeclaredNamespaces());
+                    }
+                } else if (code == XMLStreamConstants.END_ELEMENT) {
+                    namespaces.remove(namespaces.size() - 1);
+                }
+            }
+        }
+
+        // starts recording an object, declaring all namespaces in scope
+        // on its root element so the recording stands alone
+        private void startObject() throws IOException {
+            capture.reset();
+            w = new OutputStreamWriter(capture, Constants.CHAR_ENCODING);
+            Map<String, String> inScope = new LinkedHashMap<String, String>();
+            for (Map<String, String> declared: namespaces) {
+                inScope.putAll(declared);
+            }
+            inScope.putAll(getDeclaredNamespaces());
+            writeStartElement();
+            for (Map.Entry<String, String> ns: inScope.entrySet()) {
+                writeNamespace(ns.getKey(), ns.getValue());
+            }
+            writeAttributes();
+            w.write('>');
+            objectDepth = 1;
+        }
+
+        private void record(int code) throws IOException {
+            switch (code) {
+                case XMLStreamConstants.START_ELEMENT:
+                    writeStartElement();
+                    for (int i = 0; i < r.getNamespaceCount(); i++) {
+                        writeNamespace(r.getNamespacePrefix(i),
+                                r.getNamespaceURI(i));
+                    }
+                    writeAttributes();
+                    w.write('>');
+                    objectDepth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    w.write("</");
+                    writeName(r.getPrefix(), r.getLocalName());
+                    w.write('>');
+                    if (--objectDepth == 0) endObject();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    writeEscaped(r.getTextCharacters(), r.getTextStart(),
+                            r.getTextLength(), false);
+                    break;
+                case XMLStreamConstants.CDATA:
+                    w.write("<![CDATA[");
+                    w.write(r.getText());
+                    w.write("]]>");
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    w.write("<!--");
+                    w.write(r.getText());
+                    w.write("-->");
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    w.write("<?");
+                    w.write(r.getPITarget());
+                    String data = r.getPIData();
+                    if (data != null && data.length() > 0) {
+                        w.write(' ');
+                        w.write(data);
+                    }
+                    w.write("?>");
+                    break;
+                default:
+                    break;
+            }
+            checkSize();
+        }
+
+        private void checkSize() throws IOException {
+            if (w != null) w.flush();
+            if (capture.size() > maxObjectSize) {
+                throw new IOException("Object exceeds maximum size of "
+                        + maxObjectSize + " bytes");
+            }
+        }
+
+        // reads the recorded object with the underlying reader
+        private void endObject() throws IOException {
+            w.close();
+            w = null;
+            checkSize();
+            ByteBuffer source = capture.toByteBuffer();
+            if (visitor != null) {
+                reader.readObject(source, visitor);
+            } else {
+                sink.put(reader.readObject(source));
+            }
+            if (capture.capacity() > MAX_RETAINED_CAPTURE_SIZE) {
+                capture = new CaptureBuffer();
+            } else {
+                capture.reset();
+            }
+            objectCount++;
+        }
+
+        private Map<String, String> getDeclaredNamespaces() {
+            Map<String, String> declared = new LinkedHashMap<String, String>();
+            for (int i = 0; i < r.getNamespaceCount(); i++) {
+                declared.put(emptyIfNull(r.getNamespacePrefix(i)),
+                        r.getNamespaceURI(i));
+            }
+            return declared;
+        }
+
+        // writes the start tag, up to its namespaces and attributes
+        private void writeStartElement() throws IOException {
+            w.write('<');
+            writeName(r.getPrefix(), r.getLocalName());
+        }
+
+        private void writeNamespace(String prefix, String uri)
+                throws IOException {
+            w.write(" xmlns");
+            if (prefix != null && prefix.length() > 0) {
+                w.write(':');
+                w.write(prefix);
+            }
+            writeValue(emptyIfNull(uri));
+        }
+
+        private void writeAttributes() throws IOException {
+            for (int i = 0; i < r.getAttributeCount(); i++) {
+                w.write(' ');
+                writeName(r.getAttributePrefix(i),
+                        r.getAttributeLocalName(i));
+                writeValue(r.getAttributeValue(i));
+            }
+        }
+
+        private void writeName(String prefix, String localName)
+                throws IOException {
+            if (prefix != null && prefix.length() > 0) {
+                w.write(prefix);
+                w.write(':');
+            }
+            w.write(localName);
+        }
+
+        private void writeValue(String value) throws IOException {
+            w.write("=\"");
+            char[] chars = value.toCharArray();
+            writeEscaped(chars, 0, chars.length, true);
+            w.write('"');
+        }
+
+        // writes text or an attribute value, escaping markup, and the
+        // whitespace that reading it again would normalize
+        private void writeEscaped(char[] chars, int start, int length,
+                                  boolean attribute) throws IOException {
+            int end = start + length;
+            int run = start;
+            for (int i = start; i < end; i++) {
+                String escaped;
+                char c = chars[i];
+                if (c == '&') {
+                    escaped = "&amp;";
+                } else if (c == '<') {
+                    escaped = "&lt;";
+                } else if (c == '>') {
+                    escaped = "&gt;";
+                } else if (c == '\r') {
+                    escaped = "&#13;";
+                } else if (!attribute) {
+                    continue;
+                } else if (c == '"') {
+                    escaped = "&quot;";
+                } else if (c == '\n') {
+                    escaped = "&#10;";
+                } else if (c == '\t') {
+                    escaped = "&#9;";
+                } else {
+                    continue;
+                }
+                w.write(chars, run, i - run);
+                w.write(escaped);
+                run = i + 1;
+            }
+            w.write(chars, run, end - run);
+        }
+    }
+
+    // a byte array output stream whose content can be read in place
+    private static class CaptureBuffer extends ByteArrayOutputStream {
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+
+    private static String emptyIfNull(String value) {
+        return value == null ? "" : value;
+    }
+
+}
@@ -0,0 +1,124 @@
+package com.github.cwilper.fcrepo.dto.foxml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Decodes base64 directly from character data into a reusable buffer,
+ * without allocating anything per chunk of input.
+ * <p>
+ * Decoding is compatible with commons-codec's <code>Base64</code>: both
+ * the standard and URL-safe alphabets are accepted, characters outside
+ * the alphabet (such as whitespace) are ignored, decoding stops at the
+ * first pad character, and a trailing partial quantum is decoded as far
+ * as possible.
+ * <p>
+ * Instances may be reused for any number of values, but are not
+ * thread-safe.
+ */
+class Base64CharDecoder {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final byte[] DECODE_TABLE = new byte[128];
+
+    private static final char PAD = '=';
+
+    static {
+        for (int i = 0; i < DECODE_TABLE.length; i++) {
+            DECODE_TABLE[i] = -1;
+        }
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+                + "abcdefghijklmnopqrstuvwxyz0123456789";
+        for (int i = 0; i < alphabet.length(); i++) {
+            DECODE_TABLE[alphabet.charAt(i)] = (byte) i;
+        }
+        DECODE_TABLE['+'] = 62;
+        DECODE_TABLE['-'] = 62;
+        DECODE_TABLE['/'] = 63;
+        DECODE_TABLE['_'] = 63;
+    }
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private OutputStream sink;
+    private int pos;
+    private int bits;
+    private int count;
+    private boolean eof;
+
+    /**
+     * Starts decoding a new value.
+     *
+     * @param sink the stream to write decoded bytes to. It will not be
+     *        closed by this decoder.
+     */
+    void start(OutputStream sink) {
+        this.sink = sink;
+        pos = 0;
+        bits = 0;
+        count = 0;
+        eof = false;
+    }
+
+    /**
+     * Decodes the given characters as the next part of the current value.
+     *
+     * @param chars the array containing the characters.
+     * @param start the offset of the first character.
+     * @param length the number of characters.
+     * @throws IOException if writing to the sink fails.
+     */
+    void decode(char[] chars, int start, int length) throws IOException {
+        if (eof) return;
+        int end = start + length;
+        for (int i = start; i < end; i++) {
+            char c = chars[i];
+            if (c == PAD) {
+                eof = true;
+                return;
+            }
+            if (c < 128) {
+                int value = DECODE_TABLE[c];
+                if (value >= 0) {
+                    bits = (bits << 6) | value;
+                    if (++count == 4) {
+                        if (pos > BUFFER_SIZE - 3) flushBuffer();
+                        buffer[pos++] = (byte) (bits >> 16);
+                        buffer[pos++] = (byte) (bits >> 8);
+                        buffer[pos++] = (byte) bits;
+                        bits = 0;
+                        count = 0;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Finishes decoding the current value, writing any remaining bytes
+     * to the sink and flushing it.
+     *
+     * @throws IOException if writing to the sink fails.
+     */
+    void finish() throws IOException {
+        if (pos > BUFFER_SIZE - 2) flushBuffer();
+        if (count == 2) {
+            buffer[pos++] = (byte) (bits >> 4);
+        } else if (count == 3) {
+            buffer[pos++] = (byte) (bits >> 10);
+            buffer[pos++] = (byte) (bits >> 2);
+        }
+        flushBuffer();
+        sink.flush();
+        sink = null;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (pos > 0) {
+            sink.write(buffer, 0, pos);
+            pos = 0;
+        }
+    }
+
+}
@@ -0,0 +1,296 @@
+package com.github.cwilper.fcrepo.dto.foxml;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Finds the byte range of each <code>binaryContent</code> element's
+ * base64 text within a FOXML file, as it is being parsed by a
+ * {@link #wrap(XMLStreamReader) wrapped} StAX reader.
+ * <p>
+ * The file is scanned separately from the parser, at the byte level, and
+ * lazily: only as far as needed to locate the element the parser is
+ * positioned at. Elements are matched by their ordinal position among
+ * <code>binaryContent</code> elements outside of <code>xmlContent</code>,
+ * which both sides count the same way.
+ * <p>
+ * Only files in an ASCII-compatible encoding such as UTF-8 can be scanned.
+ */
+class BinaryContentLocator {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final byte[] BINARY_CONTENT =
+            ascii(Constants.binaryContent);
+    private static final byte[] XML_CONTENT =
+            ascii(Constants.xmlContent);
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final boolean scannable;
+
+    private long bufferStart;
+    private long pos;
+
+    // ordinal of the last binaryContent element seen by each side
+    private int scannedCount;
+    private int parsedCount;
+
+    // depth within an xmlContent element, or zero if not within one
+    private int scannedInlineDepth;
+    private int parsedInlineDepth;
+
+    /**
+     * Creates an instance.
+     *
+     * @param file the file being parsed.
+     * @throws IOException if the file can't be opened.
+     */
+    BinaryContentLocator(File file) throws IOException {
+        this.file = new RandomAccessFile(file, "r");
+        this.channel = this.file.getChannel();
+        buffer.limit(0);
+        int first = byteAt(0);
+        // rule out UTF-16 and other encodings where markup isn't ascii
+        scannable = first != 0x00 && first != 0xFE && first != 0xFF;
+    }
+
+    /**
+     * Wraps the given reader so that the elements it encounters are counted.
+     * All parsing must be done through the returned reader.
+     *
+     * @param reader the reader to wrap.
+     * @return the wrapped reader.
+     */
+    XMLStreamReader wrap(XMLStreamReader reader) {
+        return new StreamReaderDelegate(reader) {
+            @Override
+            public int next() throws XMLStreamException {
+                return parsed(this, super.next());
+            }
+            @Override
+            public int nextTag() throws XMLStreamException {
+                return parsed(this, super.nextTag());
+            }
+        };
+    }
+
+    private int parsed(XMLStreamReader reader, int event) {
+        if (event == XMLStreamConstants.START_ELEMENT) {
+            if (parsedInlineDepth > 0) {
+                parsedInlineDepth++;
+            } else if (reader.getLocalName().equals(Constants.xmlContent)) {
+                parsedInlineDepth = 1;
+            } else if (reader.getLocalName().equals(
+                    Constants.binaryContent)) {
+                parsedCount++;
+            }
+        } else if (event == XMLStreamConstants.END_ELEMENT
+                && parsedInlineDepth > 0) {
+            parsedInlineDepth--;
+        }
+        return event;
+    }
+
+    /**
+     * Gets the byte range of the base64 text of the <code>binaryContent</code>
+     * element the wrapped reader is currently positioned at.
+     *
+     * @return the range, or <code>null</code> if it can't be determined or
+     *         the element contains anything but base64 text and whitespace.
+     * @throws IOException if the file can't be read.
+     */
+    long[] locate() throws IOException {
+        if (!scannable) return null;
+        while (scannedCount < parsedCount) {
+            long[] range = scanToNextBinaryContent();
+            if (range == null) return null;
+            if (scannedCount == parsedCount) {
+                return range[1] < 0 ? null : range;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Releases the file.
+     */
+    void close() {
+        try {
+            file.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    // scans to just past the next binaryContent start tag outside of
+    // xmlContent, returning {offset, length} of its text, with a negative
+    // length if the text isn't plain base64, or null if there are no more
+    private long[] scanToNextBinaryContent() throws IOException {
+        int b;
+        while ((b = byteAt(pos++)) != -1) {
+            if (b != '<') continue;
+            b = byteAt(pos);
+            if (b == '!') {
+                skipDeclaration();
+            } else if (b == '?') {
+                skipPast("?>");
+            } else if (b == '/') {
+                skipTag();
+                if (scannedInlineDepth > 0) scannedInlineDepth--;
+            } else {
+                long nameStart = pos;
+                boolean selfClosing = skipTag();
+                if (scannedInlineDepth > 0) {
+                    if (!selfClosing) scannedInlineDepth++;
+                } else if (localNameEquals(nameStart, XML_CONTENT)) {
+                    if (!selfClosing) scannedInlineDepth = 1;
+                } else if (localNameEquals(nameStart, BINARY_CONTENT)) {
+                    scannedCount++;
+                    if (selfClosing) return new long[] { pos, 0 };
+                    return scanBase64Text();
+                }
+            }
+        }
+        return null;
+    }
+
+    // scans the text following a start tag up to the next markup, which is
+    // left unconsumed
+    private long[] scanBase64Text() throws IOException {
+        long start = pos;
+        boolean plain = true;
+        int b;
+        while ((b = byteAt(pos)) != -1 && b != '<') {
+            if (!isBase64OrSpace(b)) plain = false;
+            pos++;
+        }
+        if (b == -1 || byteAt(pos + 1) != '/') plain = false;
+        return new long[] { start, plain ? pos - start : -1 };
+    }
+
+    // skips a comment, CDATA section, or DOCTYPE declaration, starting at '!'
+    private void skipDeclaration() throws IOException {
+        if (startsWith(pos, "!--")) {
+            skipPast("-->");
+        } else if (startsWith(pos, "![CDATA[")) {
+            skipPast("]]>");
+        } else {
+            // DOCTYPE, possibly with an internal subset
+            int depth = 0;
+            int quote = 0;
+            int b;
+            while ((b = byteAt(pos++)) != -1) {
+                if (quote != 0) {
+                    if (b == quote) quote = 0;
+                } else if (b == '"' || b == '\'') {
+                    quote = b;
+                } else if (b == '[') {
+                    depth++;
+                } else if (b == ']') {
+                    depth--;
+                } else if (b == '>' && depth <= 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // skips to just past the end of a tag, returning whether it self-closed
+    private boolean skipTag() throws IOException {
+        int quote = 0;
+        int last = 0;
+        int b;
+        while ((b = byteAt(pos++)) != -1) {
+            if (quote != 0) {
+                if (b == quote) quote = 0;
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return last == '/';
+            }
+            last = b;
+        }
+        return false;
+    }
+
+    private void skipPast(String terminator) throws IOException {
+        while (byteAt(pos) != -1) {
+            if (startsWith(pos, terminator)) {
+                pos += terminator.length();
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private boolean startsWith(long offset, String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            if (byteAt(offset + i) != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // tells whether the tag name starting at the given offset has the given
+    // local name, regardless of prefix
+    private boolean localNameEquals(long nameStart, byte[] localName)
+            throws IOException {
+        long nameEnd = nameStart;
+        int b;
+        while ((b = byteAt(nameEnd)) != -1 && !isNameEnd(b)) {
+            nameEnd++;
+        }
+        long localStart = nameEnd - localName.length;
+        if (localStart < nameStart) return false;
+        if (localStart > nameStart && byteAt(localStart - 1) != ':') {
+            return false;
+        }
+        for (int i = 0; i < localName.length; i++) {
+            if (byteAt(localStart + i) != localName[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean isNameEnd(int b) {
+        return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\r'
+                || b == '\n';
+    }
+
+    private static boolean isBase64OrSpace(int b) {
+        return (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z')
+                || (b >= '0' && b <= '9') || b == '+' || b == '/'
+                || b == '-' || b == '_' || b == '=' || b == ' ' || b == '\t'
+                || b == '\r' || b == '\n';
+    }
+
+    private int byteAt(long offset) throws IOException {
+        if (offset < bufferStart || offset >= bufferStart + buffer.limit()) {
+            buffer.clear();
+            bufferStart = offset;
+            while (buffer.hasRemaining()
+                    && channel.read(buffer, offset + buffer.position()) > 0) {
+                // keep filling
+            }
+            buffer.flip();
+            if (buffer.limit() == 0) return -1;
+        }
+        return buffer.get((int) (offset - bufferStart)) & 0xff;
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) s.charAt(i);
+        }
+        return bytes;
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.github.cwilper.fcrepo.dto.foxml;
+
+import com.github.cwilper.fcrepo.dto.core.io.ContentResolver;
+import com.github.cwilper.fcrepo.dto.core.io.DefaultContentResolver;
+import org.apache.commons.codec.binary.Base64InputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+
+/**
+ * A {@link ContentResolver} that resolves references to base64 content
+ * embedded in FOXML files, and delegates all other references to another
+ * resolver.
+ * <p>
+ * Such references are assigned as datastream version content locations
+ * by a {@link FOXMLReader} with lazy binary content enabled. They have the
+ * form <code>foxml-binary:<i>file-uri</i>#<i>offset</i>-<i>length</i></code>,
+ * where offset and length give the range of the base64 text within the file.
+ * The content is decoded as it is read, and the file must not have been
+ * changed since it was read.
+ *
+ * @see FOXMLReader#setLazyBinaryContent(boolean)
+ */
+public class EmbeddedContentResolver implements ContentResolver {
+
+    /** The URI scheme of embedded content references. */
+    public static final String SCHEME = "foxml-binary";
+
+    private final ContentResolver delegate;
+    private final boolean closeDelegate;
+
+    /**
+     * Creates an instance that delegates to a new
+     * {@link DefaultContentResolver}, which will be closed when this
+     * resolver is closed.
+     */
+    public EmbeddedContentResolver() {
+        this.delegate = new DefaultContentResolver();
+        this.closeDelegate = true;
+    }
+
+    /**
+     * Creates an instance that delegates to the given resolver, which will
+     * not be closed when this resolver is closed.
+     *
+     * @param delegate the resolver to use for all other references,
+     *        never <code>null</code>.
+     */
+    public EmbeddedContentResolver(ContentResolver delegate) {
+        if (delegate == null) throw new NullPointerException();
+        this.delegate = delegate;
+        this.closeDelegate = false;
+    }
+
+    /**
+     * Gets a reference to the given range of base64 text in a file.
+     *
+     * @param file the file.
+     * @param offset the byte offset of the start of the text.
+     * @param length the length of the text, in bytes.
+     * @return the reference.
+     */
+    static URI getURI(File file, long offset, long length) {
+        return URI.create(SCHEME + ":" + file.toURI() + "#" + offset + "-"
+                + length);
+    }
+
+    @Override
+    public InputStream resolveContent(URI base, URI ref) throws IOException {
+        if (!SCHEME.equals(ref.getScheme())) {
+            return delegate.resolveContent(base, ref);
+        }
+        File file;
+        long offset;
+        long length;
+        try {
+            file = new File(new URI(ref.getRawSchemeSpecificPart()));
+            String range = ref.getFragment();
+            int i = range.indexOf('-');
+            offset = Long.parseLong(range.substring(0, i));
+            length = Long.parseLong(range.substring(i + 1));
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed embedded content reference: "
+                    + ref, e);
+        } catch (URISyntaxException e) {
+            throw new IOException("Malformed embedded content reference: "
+                    + ref, e);
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(offset);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+        return new Base64InputStream(new BufferedInputStream(
+                new BoundedInputStream(Channels.newInputStream(
+                        raf.getChannel()), length)), false);
+    }
+
+    @Override
+    public void resolveContent(URI base, URI ref, OutputStream sink)
+            throws IOException {
+        if (!SCHEME.equals(ref.getScheme())) {
+            delegate.resolveContent(base, ref, sink);
+            return;
+        }
+        InputStream source = resolveContent(base, ref);
+        try {
+            IOUtils.copy(source, sink);
+        } finally {
+            IOUtils.closeQuietly(source);
+        }
+    }
+
+    @Override
+    @PreDestroy
+    public void close() {
+        if (closeDelegate) {
+            delegate.close();
+        }
+    }
+
+}
@@ -0,0 +1,600 @@
+package com.github.cwilper.fcrepo.dto.foxml;
+
+import com.github.cwilper.fcrepo.dto.core.ContentDigest;
+import com.github.cwilper.fcrepo.dto.core.ControlGroup;
+import com.github.cwilper.fcrepo.dto.core.Datastream;
+import com.github.cwilper.fcrepo.dto.core.DatastreamVersion;
+import com.github.cwilper.fcrepo.dto.core.FedoraObject;
+import com.github.cwilper.fcrepo.dto.core.InlineXML;
+import com.github.cwilper.fcrepo.dto.core.InlineXMLCache;
+import com.github.cwilper.fcrepo.dto.core.State;
+import com.github.cwilper.fcrepo.dto.core.io.ContentHandler;
+import com.github.cwilper.fcrepo.dto.core.io.DateUtil;
+import com.github.cwilper.fcrepo.dto.core.io.DTOVisitor;
+import com.github.cwilper.fcrepo.dto.core.io.ReadProjection;
+import com.github.cwilper.fcrepo.dto.core.io.ValueDictionary;
+import com.github.cwilper.fcrepo.dto.core.io.XMLUtil;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Holds the state of a single {@link FOXMLReader} read operation and does
+ * the parsing for it. The reader's configuration is captured when an
+ * instance is created, so that the reader itself holds no per-read state
+ * and can be used by several threads at once.
+ */
+class FOXMLParser {
+
+    // log as the public class
+    private static final Logger logger = LoggerFactory.getLogger(
+            FOXMLReader.class);
+
+    // binary content that may turn out not to be the latest is kept in
+    // memory up to this size, and in a temporary file beyond it
+    private static final int DEFERRED_CONTENT_THRESHOLD = 1024 * 1024;
+
+    private final XMLStreamReader r;
+    private final ReadProjection projection;
+    private final ContentHandler contentHandler;
+    private final long maxInMemoryXMLSize;
+    private final boolean lazyInlineXML;
+    private final InlineXMLCache inlineXMLCache;
+    private final ValueDictionary valueDictionary;
+    private final File file;
+    private final BinaryContentLocator binaryContentLocator;
+    private final XMLContentLocator xmlContentLocator;
+
+    private Base64CharDecoder base64Decoder;
+    private FedoraObject obj;
+    private DTOVisitor visitor;
+    private byte[] deferredXML;
+    private DeferredFileOutputStream deferredContent;
+    private boolean readingSingleObject;
+
+    /**
+     * Creates an instance.
+     *
+     * @param reader the reader whose configuration should be used.
+     * @param r the stream to parse.
+     * @param file the file being parsed, if lazily reading binary content
+     *        from it, otherwise <code>null</code>.
+     * @param binaryContentLocator the locator for the file, which must have
+     *        wrapped the given stream, or <code>null</code>.
+     * @param xmlContentLocator the locator for the buffer being parsed,
+     *        which must have wrapped the given stream, or <code>null</code>.
+     */
+    FOXMLParser(FOXMLReader reader,
+                XMLStreamReader r,
+                File file,
+                BinaryContentLocator binaryContentLocator,
+                XMLContentLocator xmlContentLocator) {
+        this.r = r;
+        this.projection = reader.projection();
+        this.contentHandler = reader.getContentHandler();
+        this.maxInMemoryXMLSize = reader.getMaxInMemoryXMLSize();
+        this.lazyInlineXML = reader.getLazyInlineXML();
+        this.inlineXMLCache = reader.getInlineXMLCache();
+        this.valueDictionary = reader.getValueDictionary();
+        this.file = file;
+        this.binaryContentLocator = binaryContentLocator;
+        this.xmlContentLocator = xmlContentLocator;
+    }
+
+    /**
+     * Reads the first object in the stream, ignoring the rest of it.
+     *
+     * @param obj the object to populate.
+     * @param visitor the visitor to call back.
+     * @throws IOException if the visitor aborts or content can't be handled.
+     * @throws XMLStreamException if the stream can't be parsed.
+     */
+    void readObject(FedoraObject obj, DTOVisitor visitor)
+            throws IOException, XMLStreamException {
+        if (moveToStart(Constants.digitalObject, null)) {
+            this.obj = obj;
+            this.visitor = visitor;
+            readingSingleObject = true;
+            readDigitalObject();
+        }
+    }
+
+    /**
+     * Reads the next object in the stream, leaving the parser positioned
+     * after it.
+     *
+     * @param obj the object to populate.
+     * @param visitor the visitor to call back.
+     * @return whether there was another object.
+     * @throws IOException if the visitor aborts or content can't be handled.
+     * @throws XMLStreamException if the stream can't be parsed.
+     */
+    boolean readNextObject(FedoraObject obj, DTOVisitor visitor)
+            throws IOException, XMLStreamException {
+        if (!moveToStart(Constants.digitalObject, null)) return false;
+        this.obj = obj;
+        this.visitor = visitor;
+        readDigitalObject();
+        return true;
+    }
+
+    private void readDigitalObject() throws IOException, XMLStreamException {
+        obj.pid(readAttribute(Constants.PID));
+        readObjectProperties();
+        visitor.visitObject(obj);
+        if (!projection.includesAnyDatastream()) {
+            skipToEndOfObject();
+            visitor.endObject(obj);
+            return;
+        }
+        while (r.getEventType() == XMLStreamConstants.START_ELEMENT
+                && r.getLocalName().equals(Constants.datastream)) {
+            readDatastream();
+        }
+        visitor.endObject(obj);
+    }
+
+    private void readObjectProperties() throws XMLStreamException {
+        while (moveToStart(Constants.property, Constants.datastream)) {
+            String name = readAttribute(Constants.NAME);
+            String value = readAttribute(Constants.VALUE);
+            if (name != null) {
+                if (name.equals(Constants.STATE_URI)) {
+                    obj.state(parseState(value, "object"));
+                } else if (name.equals(Constants.LABEL_URI)) {
+                    obj.label(value);
+                } else if (name.equals(Constants.OWNERID_URI)) {
+                    obj.ownerId(readCommonString(value));
+                } else if (name.equals(Constants.CREATEDDATE_URI)) {
+                    obj.createdDate(parseDate(value, "object created"));
+
+                } else if (name.equals(Constants.LASTMODIFIEDDATE_URI)) {
+                    obj.lastModifiedDate(parseDate(value,
+                            "object last modified"));
+                } else {
+                    logger.warn("Ignoring unrecognized object property name: "
+                            + name);
+                }
+            }
+        }
+    }
+
+    private void readDatastream() throws IOException, XMLStreamException {
+        String id = readCommonString(readAttribute(Constants.ID));
+        if (id == null) {
+            logger.warn("Ignoring datastream; no id specified");
+            skipDatastream();
+        } else if (!projection.includesDatastream(id)) {
+            skipDatastream();
+        } else {
+            Datastream ds = new Datastream(id);
+            ds.state(parseState(readAttribute(Constants.STATE), "datastream"));
+            ds.controlGroup(parseControlGroup(readAttribute(
+                    Constants.CONTROL_GROUP)));
+            ds.versionable(parseVersionable(readAttribute(
+                    Constants.VERSIONABLE)));
+            visitor.visitDatastream(obj, ds);
+            if (projection.getLatestVersionOnly()) {
+                readLatestDatastreamVersion(ds);
+            } else {
+                while (moveToStart(Constants.datastreamVersion,
+                        Constants.datastream)) {
+                    DatastreamVersion dsv = readDatastreamVersion(ds, null);
+                    if (dsv != null) {
+                        visitor.visitDatastreamVersion(obj, ds, dsv);
+                    }
+                }
+            }
+        }
+    }
+
+    // skips the current datastream and moves to the start of the next one,
+    // if any, leaving the reader where readDatastream would have
+    private void skipDatastream() throws XMLStreamException {
+        skipElement();
+        moveToStart(Constants.datastream, null);
+    }
+
+    // visits only the latest version, deferring construction of its
+    // inline xml and handling of its binary content (if any) until it's
+    // known to be the latest, so the content handler is only called for it
+    private void readLatestDatastreamVersion(Datastream ds)
+            throws IOException, XMLStreamException {
+        DatastreamVersion latest = null;
+        byte[] latestXML = null;
+        DeferredFileOutputStream latestContent = null;
+        try {
+            while (moveToStart(Constants.datastreamVersion,
+                    Constants.datastream)) {
+                deferredXML = null;
+                deferredContent = null;
+                DatastreamVersion dsv = readDatastreamVersion(ds, latest);
+                if (dsv != null) {
+                    latest = dsv;
+                    latestXML = deferredXML;
+                    discard(latestContent);
+                    latestContent = deferredContent;
+                }
+            }
+            if (latest != null) {
+                if (latestXML != null) {
+                    latest.inlineXML(parseInlineXML(latestXML));
+                }
+                if (latestContent != null) {
+                    handleDeferredContent(ds, latest, latestContent);
+                }
+                visitor.visitDatastreamVersion(obj, ds, latest);
+            }
+        } finally {
+            deferredXML = null;
+            discard(deferredContent);
+            deferredContent = null;
+            discard(latestContent);
+        }
+    }
+
+    private void handleDeferredContent(Datastream ds, DatastreamVersion dsv,
+                                       DeferredFileOutputStream content)
+            throws IOException {
+        OutputStream sink = contentHandler.handleContent(obj, ds, dsv);
+        if (sink == null) return; // handler opted out
+        try {
+            content.writeTo(sink);
+        } finally {
+            IOUtils.closeQuietly(sink);
+        }
+    }
+
+    // deletes the temporary file of deferred content, if it has one
+    private static void discard(DeferredFileOutputStream content) {
+        if (content == null) return;
+        IOUtils.closeQuietly(content);
+        File tempFile = content.getFile();
+        if (tempFile != null && !tempFile.delete() && tempFile.exists()) {
+            logger.warn("Can't delete temp file " + tempFile);
+        }
+    }
+
+    // reads the current version unless it's no later than the given one,
+    // returning null if it was skipped
+    private DatastreamVersion readDatastreamVersion(Datastream ds,
+                                                    DatastreamVersion latest)
+            throws IOException, XMLStreamException {
+        String id = readCommonString(readAttribute(Constants.ID));
+        if (id == null) {
+            logger.warn("Ignoring datastream version; no id specified");
+            skipElement();
+            return null;
+        }
+        Date created = parseDate(readAttribute(Constants.CREATED),
+                "datastream created");
+        DatastreamVersion dsv = new DatastreamVersion(id, created);
+        if (latest != null && !isLater(dsv, latest)) {
+            skipElement();
+            return null;
+        }
+        dsv.altIds().addAll(parseAltIds(readAttribute(Constants.ALT_IDS)));
+        dsv.label(readCommonString(readAttribute(Constants.LABEL)));
+        dsv.mimeType(readCommonString(readAttribute(Constants.MIMETYPE)));
+        dsv.formatURI(parseCommonURI(readAttribute(Constants.FORMAT_URI),
+                "datastream format uri"));
+        dsv.size(parseLong(readAttribute(Constants.SIZE),
+                "datastream size"));
+        readContent(ds, dsv);
+        return dsv;
+    }
+
+    private static boolean isLater(DatastreamVersion dsv,
+                                   DatastreamVersion other) {
+        Date created = dsv.createdDate();
+        return created != null && (other.createdDate() == null
+                || created.after(other.createdDate()));
+    }
+
+    private void readContent(Datastream ds, DatastreamVersion dsv)
+            throws IOException, XMLStreamException {
+        if (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (r.getLocalName().equals(Constants.contentDigest)) {
+                readContentDigest(dsv);
+                if (r.nextTag() == XMLStreamConstants.END_ELEMENT) {
+                    return; // end of datastreamVersion
+                }
+            }
+            if (r.getLocalName().equals(Constants.xmlContent)) {
+                if (projection.getInlineXML()) {
+                    readXMLContent(dsv);
+                } else {
+                    skipElement();
+                }
+            } else if (r.getLocalName().equals(Constants.binaryContent)) {
+                if (projection.getBinaryContent()) {
+                    readBinaryContent(ds, dsv);
+                } else {
+                    skipElement();
+                }
+            } else if (r.getLocalName().equals(Constants.contentLocation)) {
+                readContentLocation(dsv);
+            }
+        }
+    }
+
+    private void readContentLocation(DatastreamVersion dsv)
+            throws XMLStreamException {
+        String type = readAttribute(Constants.TYPE);
+        URI ref = parseURI(readAttribute(Constants.REF), "contentLocation ref");
+        if (ref != null) {
+            if (Constants.INTERNALREF_TYPE.equals(type)) {
+                URI internalRef = LenientDecoder.decodeURI(
+                        Constants.INTERNALREF_SCHEME + ":" + ref);
+                if (internalRef == null) {
+                    logger.warn("Ignoring malformed contentLocation "
+                            + "internal ref: " + ref);
+                } else {
+                    dsv.contentLocation(internalRef);
+                }
+            } else {
+                dsv.contentLocation(ref);
+            }
+        }
+    }
+
+    private void readBinaryContent(Datastream ds, DatastreamVersion dsv)
+            throws IOException, XMLStreamException {
+        if (binaryContentLocator != null) {
+            long[] range = binaryContentLocator.locate();
+            if (range != null) {
+                dsv.contentLocation(EmbeddedContentResolver.getURI(file,
+                        range[0], range[1]));
+                skipElement();
+                return;
+            }
+        }
+        if (projection.getLatestVersionOnly()) {
+            // hold it until this is known to be the latest version
+            deferredContent = new DeferredFileOutputStream(
+                    DEFERRED_CONTENT_THRESHOLD, "fcrepo-dto", null, null);
+            decodeBinaryContent(deferredContent);
+            return;
+        }
+        OutputStream sink = contentHandler.handleContent(obj, ds, dsv);
+        if (sink == null) return; // handler opted out
+        decodeBinaryContent(sink);
+    }
+
+    // decodes the content of the current binaryContent element to the
+    // given sink, closing it
+    private void decodeBinaryContent(OutputStream sink)
+            throws IOException, XMLStreamException {
+        if (base64Decoder == null) base64Decoder = new Base64CharDecoder();
+        try {
+            base64Decoder.start(sink);
+            while (r.next() != XMLStreamConstants.END_ELEMENT) {
+                if (r.isCharacters()) {
+                    base64Decoder.decode(r.getTextCharacters(),
+                            r.getTextStart(), r.getTextLength());
+                }
+            }
+            base64Decoder.finish();
+        } finally {
+            IOUtils.closeQuietly(sink);
+        }
+    }
+
+    private void readXMLContent(DatastreamVersion dsv)
+            throws IOException, XMLStreamException {
+        while (r.next() != XMLStreamConstants.START_ELEMENT) {
+            if (r.getEventType() == XMLStreamConstants.END_ELEMENT) {
+                return; // xmlContent element is empty
+            }
+        }
+        byte[] xml = null;
+        try {
+            // take it as written if possible, otherwise re-serialize it
+            if (xmlContentLocator != null) {
+                xml = xmlContentLocator.readElement(r);
+            }
+            if (xml == null) {
+                ByteArrayOutputStream sink = new ByteArrayOutputStream();
+                XMLUtil.copy(r, sink);
+                xml = sink.toByteArray();
+            }
+        } catch (Exception e) {
+            throw new IOException("Error parsing foxml:xmlContent", e);
+        }
+        if (projection.getLatestVersionOnly()) {
+            deferredXML = xml;
+        } else {
+            dsv.inlineXML(parseInlineXML(xml));
+        }
+    }
+
+    private InlineXML parseInlineXML(byte[] bytes) throws IOException {
+        try {
+            if (lazyInlineXML) {
+                if (inlineXMLCache != null) {
+                    return inlineXMLCache.getLazy(bytes, maxInMemoryXMLSize);
+                }
+                return InlineXML.lazy(bytes, maxInMemoryXMLSize);
+            }
+            if (inlineXMLCache != null) {
+                return inlineXMLCache.get(bytes, maxInMemoryXMLSize);
+            }
+            return new InlineXML(bytes, maxInMemoryXMLSize);
+        } catch (Exception e) {
+            throw new IOException("Error parsing foxml:xmlContent", e);
+        }
+    }
+
+    private void readContentDigest(DatastreamVersion dsv)
+            throws XMLStreamException {
+        String type = readCommonString(readAttribute(Constants.TYPE));
+        String digest = readAttribute(Constants.DIGEST);
+        if (type != null || digest != null) {
+            dsv.contentDigest(new ContentDigest().type(type).hexValue(digest));
+        }
+        r.nextTag(); // consume closing contentDigest tag
+    }
+
+    // moves to the next start of localName, stopping early at the start of
+    // stopAtLocalName or the end of the current digitalObject, if any
+    private boolean moveToStart(String localName,
+                                String stopAtLocalName)
+            throws XMLStreamException {
+        while (r.hasNext()) {
+            int code = r.next();
+            if (code == XMLStreamConstants.START_ELEMENT) {
+                if (r.getLocalName().equals(localName)) {
+                    return true;
+                } else if (r.getLocalName().equals(stopAtLocalName)) {
+                    return false;
+                }
+            } else if (code == XMLStreamConstants.END_ELEMENT
+                    && r.getLocalName().equals(Constants.digitalObject)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    // skips the remainder of the current digitalObject, unless it is the
+    // only one being read, in which case the rest of the stream is ignored
+    private void skipToEndOfObject() throws XMLStreamException {
+        if (readingSingleObject || !r.isStartElement()) return;
+        int depth = 1;
+        while (true) {
+            int code = r.next();
+            if (code == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (code == XMLStreamConstants.END_ELEMENT) {
+                if (depth == 0) return;
+                depth--;
+            }
+        }
+    }
+
+    // skips to the end of the current element, including all its descendants
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int code = r.next();
+            if (code == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (code == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private String readAttribute(String localName) throws XMLStreamException {
+        String value = r.getAttributeValue(null, localName);
+        if (value != null && value.trim().length() > 0) {
+            return value.trim();
+        } else {
+            return null;
+        }
+    }
+
+    // gets the canonical instance of a value that's likely to recur
+    private String readCommonString(String value) {
+        if (valueDictionary == null) return value;
+        return valueDictionary.getString(value);
+    }
+
+    private static Date parseDate(String value, String kind) {
+        if (value == null) return null;
+        Date date = DateUtil.toDate(value);
+        if (date == null) {
+            logger.warn("Ignoring malformed " + kind + " date value: " + value);
+        }
+        return date;
+    }
+
+    private static State parseState(String value, String kind) {
+        if (value == null) return null;
+        State state = LenientDecoder.decodeState(value);
+        if (state == null) {
+            logger.warn("Ignoring unrecognized " + kind + " state value: "
+                    + value);
+        }
+        return state;
+    }
+
+    private static ControlGroup parseControlGroup(String value) {
+        if (value == null) return null;
+        ControlGroup controlGroup = LenientDecoder.decodeControlGroup(value);
+        if (controlGroup == null) {
+            logger.warn("Ignoring unrecognized datastream control group value: "
+                    + value);
+        }
+        return controlGroup;
+    }
+
+    private static Boolean parseVersionable(String value) {
+        if (value == null) return null;
+        Boolean versionable = LenientDecoder.decodeBoolean(value);
+        if (versionable == null) {
+            logger.warn("Ignoring unrecognized datastream versionable value: "
+                    + value);
+        }
+        return versionable;
+    }
+
+    private static Long parseLong(String value, String kind) {
+        if (value == null) return null;
+        Long result = LenientDecoder.decodeLong(value);
+        if (result == null) {
+            logger.warn("Ignoring invalid " + kind + " value: " + value);
+        }
+        return result;
+    }
+
+    private static URI parseURI(String value, String kind) {
+        if (value == null) return null;
+        URI uri = LenientDecoder.decodeURI(value);
+        if (uri == null) {
+            logger.warn("Ignoring malformed " + kind + " value: " + value);
+        }
+        return uri;
+    }
+
+    // like parseURI, but gets the canonical instance of a URI that's likely
+    // to recur
+    private URI parseCommonURI(String value, String kind) {
+        if (value == null || valueDictionary == null
+                || !LenientDecoder.isPossibleURI(value)) {
+            return parseURI(value, kind);
+        }
+        try {
+            return valueDictionary.getURI(value);
+        } catch (URISyntaxException e) {
+            logger.warn("Ignoring malformed " + kind + " value: " + value);
+            return null;
+        }
+    }
+
+    private Set<URI> parseAltIds(String value) {
+        Set<URI> set = new HashSet<URI>();
+        if (value != null) {
+            for (String uriString: value.split("\\s+")) {
+                URI uri = parseCommonURI(uriString, "datastream altId");
+                if (uri != null) set.add(uri);
+            }
+        }
+        return set;
+    }
+
+}
@@ -1,38 +1,62 @@
 package com.github.cwilper.fcrepo.dto.foxml;
 
-import com.github.cwilper.fcrepo.dto.core.ContentDigest;
-import com.github.cwilper.fcrepo.dto.core.ControlGroup;
 import com.github.cwilper.fcrepo.dto.core.Datastream;
 import com.github.cwilper.fcrepo.dto.core.DatastreamVersion;
 import com.github.cwilper.fcrepo.dto.core.FedoraObject;
 import com.github.cwilper.fcrepo.dto.core.InlineXML;
-import com.github.cwilper.fcrepo.dto.core.State;
+import com.github.cwilper.fcrepo.dto.core.InlineXMLCache;
 import com.github.cwilper.fcrepo.dto.core.io.ContentHandlingDTOReader;
-import com.github.cwilper.fcrepo.dto.core.io.DateUtil;
+import com.github.cwilper.fcrepo.dto.core.io.DefaultValueDictionary;
 import com.github.cwilper.fcrepo.dto.core.io.DTOReader;
+import com.github.cwilper.fcrepo.dto.core.io.DTOVisitor;
+import com.github.cwilper.fcrepo.dto.core.io.MappedInputStream;
+import com.github.cwilper.fcrepo.dto.core.io.ReadProjection;
+import com.github.cwilper.fcrepo.dto.core.io.StAXBackend;
+import com.github.cwilper.fcrepo.dto.core.io.ValueDictionary;
 import com.github.cwilper.fcrepo.dto.core.io.XMLUtil;
-import org.apache.commons.codec.binary.Base64OutputStream;
+import com.github.cwilper.ttff.AbstractSource;
+import com.github.cwilper.ttff.Source;
 import org.apache.commons.io.IOUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * A {@link DTOReader} that reads Fedora Object XML.
  * <p>
+ * In addition to reading whole objects, this reader can push the parts of
+ * an object to a {@link DTOVisitor} as they are parsed, via
+ * {@link #readObject(InputStream, DTOVisitor)}. This allows very large
+ * objects to be processed in constant memory. It can also read a stream
+ * containing many objects with a single parser, via
+ * {@link #readObjects(InputStream)}.
+ * <p>
+ * If only some parts of each object are needed, a {@link ReadProjection}
+ * may be set, causing the reader to skip unwanted datastreams and content
+ * without deserializing them. If the projection includes no datastreams,
+ * the reader stops as soon as the object properties have been read, so
+ * the rest of the stream is never parsed.
+ * <p>
+ * When reading from a file, embedded binary content may be left in place
+ * rather than decoded and given to the content handler, via
+ * {@link #setLazyBinaryContent(boolean)}.
+ * <p>
+ * When reading from a buffer, including small files, which are read into
+ * one, inline XML content is usually taken exactly as written rather than
+ * re-serialized from parser events. See {@link #readObject(ByteBuffer)}.
+ * <p>
+ * Once configured, a single instance may be used by several threads at
+ * once, provided its content handler is thread-safe. The StAX factory is
+ * shared, and all state needed by a read operation is kept for the
+ * duration of that operation only.
+ * <p>
  * <b>NOTE:</b> Only FOXML version 1.1 is supported.
  *
  * @see <a href="https://wiki.duraspace.org/x/fABI">Introduction to FOXML</a>
@@ -40,16 +64,25 @@ import java.util.Set;
  */
 public class FOXMLReader extends ContentHandlingDTOReader {
 
-    private static final Logger logger = LoggerFactory.getLogger(
-            FOXMLReader.class);
+    /** 9223372036854775807 (never spill to disk) */
+    public static final long DEFAULT_MAX_IN_MEMORY_XML_SIZE = Long.MAX_VALUE;
 
-    private FedoraObject obj;
-    private XMLStreamReader r;
+    // assembles visited parts into the object being read
+    private static final DTOVisitor OBJECT_BUILDER = new ObjectBuilder();
+
+    private ReadProjection projection;
+    private boolean lazyBinaryContent;
+    private boolean lazyInlineXML;
+    private long maxInMemoryXMLSize = DEFAULT_MAX_IN_MEMORY_XML_SIZE;
+    private ValueDictionary valueDictionary = new DefaultValueDictionary();
+    private InlineXMLCache inlineXMLCache;
+    private StAXBackend staxBackend = StAXBackend.DEFAULT;
 
     /**
-     * Creates an instance.
+     * Creates an instance that reads all parts of each object.
      */
     public FOXMLReader() {
+        projection = new ReadProjection();
     }
 
     @Override
@@ -58,281 +91,496 @@ public class FOXMLReader extends ContentHandlingDTOReader {
         if (contentHandler != defaultContentHandler) {
             reader.setContentHandler(contentHandler);
         }
+        reader.setProjection(projection);
+        reader.setLazyBinaryContent(lazyBinaryContent);
+        reader.setLazyInlineXML(lazyInlineXML);
+        reader.setMaxInMemoryXMLSize(maxInMemoryXMLSize);
+        reader.setValueDictionary(valueDictionary);
+        reader.setInlineXMLCache(inlineXMLCache);
+        reader.setStAXBackend(staxBackend);
         return reader;
     }
 
+    /**
+     * Sets the projection, which determines which parts of each object are
+     * read. The given projection is copied, so later changes to it will
+     * not affect this reader.
+     *
+     * @param projection the new value, never <code>null</code>.
+     * @throws NullPointerException if the value is null.
+     */
+    public void setProjection(ReadProjection projection) {
+        this.projection = projection.copy();
+    }
+
+    /**
+     * Gets a copy of the projection.
+     *
+     * @return the value, never <code>null</code>.
+     */
+    public ReadProjection getProjection() {
+        return projection.copy();
+    }
+
+    // gets the projection without copying it; it's never modified once set
+    ReadProjection projection() {
+        return projection;
+    }
+
+    /**
+     * Sets whether embedded binary content should be left in the file it
+     * was read from, rather than decoded and given to the content handler.
+     * This only applies when reading via {@link #readObject(File)}.
+     * <p>
+     * When enabled, each datastream version with embedded base64 content is
+     * given a content location that refers to the range of the file where
+     * the content resides, which can later be decoded on demand via an
+     * {@link EmbeddedContentResolver}. The file must not be changed or
+     * removed while such references are in use. Content that cannot be
+     * referenced this way (for instance, because it contains comments or
+     * CDATA sections) is handled as usual.
+     *
+     * @param lazyBinaryContent the new value.
+     */
+    public void setLazyBinaryContent(boolean lazyBinaryContent) {
+        this.lazyBinaryContent = lazyBinaryContent;
+    }
+
+    /**
+     * Gets whether embedded binary content is left in the file it was read
+     * from.
+     *
+     * @return the value.
+     */
+    public boolean getLazyBinaryContent() {
+        return lazyBinaryContent;
+    }
+
+    /**
+     * Sets whether inline XML content should only be canonicalized when its
+     * canonical form is first needed, rather than as it is read. Content
+     * that is only written back out, for instance by {@link FOXMLWriter},
+     * is then never canonicalized.
+     * <p>
+     * Content is still checked for well-formedness as it is read, so
+     * malformed content is reported by the reader in either case.
+     *
+     * @param lazyInlineXML the new value.
+     * @see InlineXML#lazy(byte[], long)
+     */
+    public void setLazyInlineXML(boolean lazyInlineXML) {
+        this.lazyInlineXML = lazyInlineXML;
+    }
+
+    /**
+     * Gets whether inline XML content is canonicalized only when needed.
+     *
+     * @return the value.
+     */
+    public boolean getLazyInlineXML() {
+        return lazyInlineXML;
+    }
+
+    /**
+     * Sets the maximum size of inline XML content to keep in memory.
+     * Larger content is kept in temporary files instead, so that reading
+     * objects with very large <code>xmlContent</code> doesn't exhaust the
+     * heap.
+     *
+     * @param maxInMemoryXMLSize the new value, in bytes.
+     * @see InlineXML#InlineXML(byte[], long)
+     */
+    public void setMaxInMemoryXMLSize(long maxInMemoryXMLSize) {
+        this.maxInMemoryXMLSize = maxInMemoryXMLSize;
+    }
+
+    /**
+     * Gets the maximum size of inline XML content to keep in memory.
+     *
+     * @return the value, in bytes.
+     */
+    public long getMaxInMemoryXMLSize() {
+        return maxInMemoryXMLSize;
+    }
+
+    /**
+     * Sets the dictionary used to canonicalize values that commonly recur
+     * across objects: object owner ids, datastream and datastream version
+     * ids, labels, MIME types, format URIs, alternate ids, and content
+     * digest types.
+     * <p>
+     * By default, each reader has its own {@link DefaultValueDictionary}.
+     * Instances obtained via {@link #getInstance()} share the dictionary of
+     * the reader they were obtained from.
+     *
+     * @param valueDictionary the new value, or <code>null</code> to create
+     *        new instances of all values.
+     */
+    public void setValueDictionary(ValueDictionary valueDictionary) {
+        this.valueDictionary = valueDictionary;
+    }
+
+    /**
+     * Gets the dictionary used to canonicalize commonly recurring values.
+     *
+     * @return the value, possibly <code>null</code>.
+     */
+    public ValueDictionary getValueDictionary() {
+        return valueDictionary;
+    }
+
+    /**
+     * Sets the cache used to share {@link InlineXML} instances among
+     * identical inline XML values, sparing the cost of canonicalizing and
+     * holding each copy.
+     * <p>
+     * By default, no cache is used. Instances obtained via
+     * {@link #getInstance()} share the cache of the reader they were
+     * obtained from. When {@link #setLazyInlineXML(boolean) lazyInlineXML}
+     * is enabled, the cache holds lazy instances, and is consulted without
+     * canonicalizing the content.
+     *
+     * @param inlineXMLCache the new value, or <code>null</code> to create
+     *        a new instance for each value.
+     */
+    public void setInlineXMLCache(InlineXMLCache inlineXMLCache) {
+        this.inlineXMLCache = inlineXMLCache;
+    }
+
+    /**
+     * Gets the cache used to share inline XML instances.
+     *
+     * @return the value, possibly <code>null</code>.
+     */
+    public InlineXMLCache getInlineXMLCache() {
+        return inlineXMLCache;
+    }
+
+    /**
+     * Sets the StAX implementation used for parsing.
+     *
+     * @param staxBackend the new value, never <code>null</code>.
+     * @throws NullPointerException if the value is null.
+     * @throws IllegalArgumentException if the backend is not available.
+     */
+    public void setStAXBackend(StAXBackend staxBackend) {
+        if (!staxBackend.isAvailable()) {
+            throw new IllegalArgumentException("StAX backend " + staxBackend
+                    + " is not available");
+        }
+        this.staxBackend = staxBackend;
+    }
+
+    /**
+     * Gets the StAX implementation used for parsing.
+     *
+     * @return the value, never <code>null</code>.
+     */
+    public StAXBackend getStAXBackend() {
+        return staxBackend;
+    }
+
     @Override
     public FedoraObject readObject(InputStream source) throws IOException {
-        obj = new FedoraObject();
-        XMLInputFactory factory = XMLInputFactory.newInstance();
+        FedoraObject obj = new FedoraObject();
+        readObject(source, obj, OBJECT_BUILDER, null, null, null);
+        return obj;
+    }
+
+    /**
+     * Reads an object from the given file. Large files are memory-mapped
+     * rather than read through a stream.
+     *
+     * @param file the file to read from.
+     * @return a new <code>FedoraObject</code> based on the content of the
+     *         file.
+     * @throws IOException if the file cannot be opened or deserialized for
+     *         any reason.
+     * @see MappedInputStream#open(FileChannel)
+     */
+    @Override
+    public FedoraObject readObject(File file) throws IOException {
+        FileChannel channel = new FileInputStream(file).getChannel();
+        if (!lazyBinaryContent) return readObject(channel);
+        FedoraObject obj = new FedoraObject();
+        BinaryContentLocator binaryContentLocator = null;
         try {
-            r = factory.createXMLStreamReader(source, Constants.CHAR_ENCODING);
-            readObject();
-            return obj;
-        } catch (XMLStreamException e) {
-            throw new IOException(e);
+            binaryContentLocator = new BinaryContentLocator(file);
+            readObject(MappedInputStream.open(channel), obj, OBJECT_BUILDER,
+                    file, binaryContentLocator, null);
         } finally {
-            XMLUtil.closeQuietly(r);
-            IOUtils.closeQuietly(source);
+            IOUtils.closeQuietly(channel);
+            if (binaryContentLocator != null) binaryContentLocator.close();
         }
+        return obj;
     }
 
-    private void readObject() throws IOException, XMLStreamException {
-        if (moveToStart(Constants.digitalObject, null)) {
-            obj.pid(readAttribute(Constants.PID));
-            readObjectProperties();
-            while (r.getEventType() == XMLStreamConstants.START_ELEMENT
-                    && r.getLocalName().equals(Constants.datastream)) {
-                readDatastream();
+    /**
+     * Reads an object from the given channel, starting at its current
+     * position. Large files are memory-mapped rather than read through a
+     * stream, and small ones are read into a buffer, as with
+     * {@link #readObject(ByteBuffer)}.
+     *
+     * @param channel the channel to read from. It will be closed by the time
+     *        this method exits, regardless of success.
+     * @return a new <code>FedoraObject</code> based on the content of the
+     *         channel.
+     * @throws IOException if the channel cannot be deserialized for any
+     *         reason.
+     * @see MappedInputStream#open(FileChannel)
+     */
+    public FedoraObject readObject(FileChannel channel) throws IOException {
+        ByteBuffer buffer = null;
+        InputStream source = null;
+        try {
+            long size = channel.size() - channel.position();
+            if (size < MappedInputStream.DEFAULT_MAP_THRESHOLD) {
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                    // keep filling
+                }
+                buffer.flip();
+                channel.close();
+            } else {
+                source = MappedInputStream.open(channel);
             }
+        } catch (IOException e) {
+            IOUtils.closeQuietly(channel);
+            throw e;
         }
+        if (buffer != null) return readObject(buffer);
+        return readObject(source);
     }
 
-    private void readObjectProperties() throws XMLStreamException {
-        while (moveToStart(Constants.property, Constants.datastream)) {
-            String name = readAttribute(Constants.NAME);
-            String value = readAttribute(Constants.VALUE);
-            if (name != null) {
-                if (name.equals(Constants.STATE_URI)) {
-                    obj.state(parseState(value, "object"));
-                } else if (name.equals(Constants.LABEL_URI)) {
-                    obj.label(value);
-                } else if (name.equals(Constants.OWNERID_URI)) {
-                    obj.ownerId(value);
-                } else if (name.equals(Constants.CREATEDDATE_URI)) {
-                    obj.createdDate(parseDate(value, "object created"));
-
-                } else if (name.equals(Constants.LASTMODIFIEDDATE_URI)) {
-                    obj.lastModifiedDate(parseDate(value,
-                            "object last modified"));
-                } else {
-                    logger.warn("Ignoring unrecognized object property name: "
-                            + name);
-                }
-            }
-        }
+    /**
+     * Reads an object from the given buffer, from its position to its
+     * limit. The buffer's position, limit and content are not changed.
+     * <p>
+     * Unless the document has a DOCTYPE declaration or isn't UTF-8 encoded,
+     * the element within each <code>xmlContent</code> element is taken
+     * directly from the buffer, rather than re-serialized from parser
+     * events, and any prefixed namespaces it uses that are declared outside
+     * of it are declared on its root element. Elements with character
+     * references or carriage returns are re-serialized as usual, so the
+     * result is always the same as that of
+     * {@link #readObject(InputStream)}.
+     *
+     * @param buffer the buffer to read from, never <code>null</code>. Its
+     *        content must not be changed until this method returns.
+     * @return a new <code>FedoraObject</code> based on the content of the
+     *         buffer.
+     * @throws IOException if the buffer cannot be deserialized for any
+     *         reason.
+     */
+    public FedoraObject readObject(ByteBuffer buffer) throws IOException {
+        FedoraObject obj = new FedoraObject();
+        readObject(buffer, obj, OBJECT_BUILDER);
+        return obj;
     }
 
-    private void readDatastream() throws IOException, XMLStreamException {
-        String id = readAttribute(Constants.ID);
-        if (id != null) {
-            Datastream ds = new Datastream(id);
-            obj.putDatastream(ds);
-            ds.state(parseState(readAttribute(Constants.STATE), "datastream"));
-            ds.controlGroup(parseControlGroup(readAttribute(
-                    Constants.CONTROL_GROUP)));
-            ds.versionable(parseVersionable(readAttribute(
-                    Constants.VERSIONABLE)));
-            while (moveToStart(Constants.datastreamVersion,
-                    Constants.datastream)) {
-                readDatastreamVersion(ds);
-            }
-        } else {
-            logger.warn("Ignoring datastream; no id specified");
-        }
+    /**
+     * Reads an object from the given buffer, passing each part of it to the
+     * given visitor as soon as it has been parsed. Inline XML content is
+     * read as described in {@link #readObject(ByteBuffer)}.
+     *
+     * @param buffer the buffer to read from, never <code>null</code>. Its
+     *        position, limit and content are not changed.
+     * @param visitor the visitor to call back, never <code>null</code>.
+     * @throws IOException if the buffer cannot be deserialized for any
+     *         reason, or the visitor aborts.
+     */
+    public void readObject(ByteBuffer buffer, DTOVisitor visitor)
+            throws IOException {
+        if (visitor == null) throw new NullPointerException();
+        readObject(buffer, new FedoraObject(), visitor);
     }
 
-    private void readDatastreamVersion(Datastream ds)
-            throws IOException, XMLStreamException {
-        String id = readAttribute(Constants.ID);
-        if (id != null) {
-            Date created = parseDate(readAttribute(Constants.CREATED),
-                    "datastream created");
-            DatastreamVersion dsv = new DatastreamVersion(id, created);
-            ds.versions().add(dsv);
-            dsv.altIds().addAll(parseAltIds(readAttribute(Constants.ALT_IDS)));
-            dsv.label(readAttribute(Constants.LABEL));
-            dsv.mimeType(readAttribute(Constants.MIMETYPE));
-            dsv.formatURI(parseURI(readAttribute(Constants.FORMAT_URI),
-                    "datastream format uri"));
-            dsv.size(parseLong(readAttribute(Constants.SIZE),
-                    "datastream size"));
-            if (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
-                if (r.getLocalName().equals(Constants.contentDigest)) {
-                    readContentDigest(dsv);
-                    if (r.nextTag() == XMLStreamConstants.END_ELEMENT) {
-                        return; // end of datastreamVersion
-                    }
-                }
-                if (r.getLocalName().equals(Constants.xmlContent)) {
-                    readXMLContent(dsv);
-                } else if (r.getLocalName().equals(Constants.binaryContent)) {
-                    readBinaryContent(ds, dsv);
-                } else if (r.getLocalName().equals(Constants.contentLocation)) {
-                    readContentLocation(dsv);
-                }
-            }
+    private void readObject(ByteBuffer buffer,
+                            FedoraObject obj,
+                            DTOVisitor visitor) throws IOException {
+        InputStream source;
+        if (buffer.hasArray()) {
+            source = new ByteArrayInputStream(buffer.array(),
+                    buffer.arrayOffset() + buffer.position(),
+                    buffer.remaining());
         } else {
-            logger.warn("Ignoring datastream version; no id specified");
+            source = new ByteBufferInputStream(buffer.duplicate());
         }
+        readObject(source, obj, visitor, null, null,
+                new XMLContentLocator(buffer.duplicate()));
     }
 
-    private void readContentLocation(DatastreamVersion dsv)
-            throws XMLStreamException {
-        String type = readAttribute(Constants.TYPE);
-        URI ref = parseURI(readAttribute(Constants.REF), "contentLocation ref");
-        if (ref != null) {
-            if (Constants.INTERNALREF_TYPE.equals(type)) {
-                try {
-                    dsv.contentLocation(new URI(Constants.INTERNALREF_SCHEME
-                            + ":" + ref));
-                } catch (URISyntaxException e) {
-                    logger.warn("Ignoring malformed contentLocation "
-                            + "internal ref: " + ref);
-                }
-            } else {
-                dsv.contentLocation(ref);
-            }
-        }
+    /**
+     * Reads an object from the given stream, passing each part of it to the
+     * given visitor as soon as it has been parsed. Unlike
+     * {@link #readObject(InputStream)}, datastreams and datastream versions
+     * are not retained by the reader once they have been visited.
+     *
+     * @param source the stream to read from. It will be closed by the time
+     *        this method exits, regardless of success.
+     * @param visitor the visitor to call back, never <code>null</code>.
+     * @throws IOException if the stream cannot be deserialized for any reason,
+     *         or the visitor aborts.
+     */
+    public void readObject(InputStream source, DTOVisitor visitor)
+            throws IOException {
+        if (visitor == null) throw new NullPointerException();
+        readObject(source, new FedoraObject(), visitor, null, null, null);
     }
 
-    private void readBinaryContent(Datastream ds, DatastreamVersion dsv)
-            throws IOException, XMLStreamException {
-        OutputStream sink = contentHandler.handleContent(obj, ds, dsv);
-        if (sink == null) return; // handler opted out
-        OutputStream out = null;
+    private void readObject(InputStream source,
+                            FedoraObject obj,
+                            DTOVisitor visitor,
+                            File file,
+                            BinaryContentLocator binaryContentLocator,
+                            XMLContentLocator xmlContentLocator)
+            throws IOException {
+        XMLStreamReader r = null;
         try {
-            out = new Base64OutputStream(sink, false);
-            while (r.next() != XMLStreamConstants.END_ELEMENT) {
-                if (r.isCharacters()) {
-                    out.write(r.getText().getBytes(Constants.CHAR_ENCODING));
-                }
+            r = staxBackend.getInputFactory().createXMLStreamReader(source,
+                    Constants.CHAR_ENCODING);
+            if (binaryContentLocator != null) {
+                r = binaryContentLocator.wrap(r);
             }
-            out.flush();
+            if (xmlContentLocator != null) {
+                r = xmlContentLocator.wrap(r);
+            }
+            new FOXMLParser(this, r, file, binaryContentLocator,
+                    xmlContentLocator).readObject(obj, visitor);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
         } finally {
-            IOUtils.closeQuietly(out);
-            IOUtils.closeQuietly(sink);
+            XMLUtil.closeQuietly(r);
+            IOUtils.closeQuietly(source);
         }
     }
 
-    private void readXMLContent(DatastreamVersion dsv)
-            throws IOException, XMLStreamException {
-        while (r.next() != XMLStreamConstants.START_ELEMENT) {
-            if (r.getEventType() == XMLStreamConstants.END_ELEMENT) {
-                return; // xmlContent element is empty
-            }
-        }
-        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+    /**
+     * Gets a source of all objects in the given stream, which are read
+     * lazily, one at a time, as they are requested from the source.
+     * <p>
+     * Each <code>digitalObject</code> element in the stream yields an object,
+     * regardless of where it appears in the document. This allows for
+     * sequences of objects wrapped in an arbitrary enclosing element. The
+     * same parser is used for the whole stream, so the per-object cost of
+     * parser setup is avoided.
+     * <p>
+     * The source captures the configuration of this reader when it is
+     * created, and is not thread-safe itself. A
+     * {@link java.util.Iterator} view of the source may be obtained via
+     * {@link com.github.cwilper.ttff.Sources#iterator(Source)}.
+     *
+     * @param source the stream to read from. It will be closed when the
+     *        returned source is exhausted or closed, or if an error occurs.
+     * @return the source of objects, possibly empty, never <code>null</code>.
+     * @throws IOException if the stream cannot be opened for parsing.
+     */
+    public Source<FedoraObject> readObjects(InputStream source)
+            throws IOException {
         try {
-            XMLUtil.copy(r, sink);
-            dsv.inlineXML(new InlineXML(sink.toByteArray()));
-        } catch (Exception e) {
-            throw new IOException("Error parsing foxml:xmlContent", e);
+            return new ObjectSource(staxBackend.getInputFactory()
+                    .createXMLStreamReader(source, Constants.CHAR_ENCODING),
+                    source);
+        } catch (XMLStreamException e) {
+            IOUtils.closeQuietly(source);
+            throw new IOException(e);
         }
     }
 
-    private void readContentDigest(DatastreamVersion dsv)
-            throws XMLStreamException {
-        String type = readAttribute(Constants.TYPE);
-        String digest = readAttribute(Constants.DIGEST);
-        if (type != null || digest != null) {
-            dsv.contentDigest(new ContentDigest().type(type).hexValue(digest));
+    // reads successive objects from a single parser
+    private class ObjectSource extends AbstractSource<FedoraObject> {
+
+        private final XMLStreamReader reader;
+        private final InputStream source;
+        private final FOXMLParser parser;
+
+        ObjectSource(XMLStreamReader reader, InputStream source) {
+            this.reader = reader;
+            this.source = source;
+            this.parser = new FOXMLParser(FOXMLReader.this, reader, null,
+                    null, null);
         }
-        r.nextTag(); // consume closing contentDigest tag
-    }
 
-    private boolean moveToStart(String localName,
-                                String stopAtLocalName)
-            throws XMLStreamException {
-        while (r.hasNext()) {
-            if (r.next() == XMLStreamConstants.START_ELEMENT) {
-                if (r.getLocalName().equals(localName)) {
-                    return true;
-                } else if (r.getLocalName().equals(stopAtLocalName)) {
-                    return false;
+        @Override
+        protected FedoraObject computeNext() throws IOException {
+            try {
+                FedoraObject obj = new FedoraObject();
+                if (parser.readNextObject(obj, OBJECT_BUILDER)) {
+                    return obj;
                 }
+            } catch (XMLStreamException e) {
+                close();
+                throw new IOException(e);
+            } catch (IOException e) {
+                close();
+                throw e;
             }
+            close();
+            return endOfData();
         }
-        return false;
-    }
 
-    private String readAttribute(String localName) throws XMLStreamException {
-        String value = r.getAttributeValue(null, localName);
-        if (value != null && value.trim().length() > 0) {
-            return value.trim();
-        } else {
-            return null;
+        @Override
+        public void close() {
+            XMLUtil.closeQuietly(reader);
+            IOUtils.closeQuietly(source);
         }
     }
 
-    private static Date parseDate(String value, String kind) {
-        if (value == null) return null;
-        Date date = DateUtil.toDate(value);
-        if (date == null) {
-            logger.warn("Ignoring malformed " + kind + " date value: " + value);
+    // attaches each visited datastream and version to its parent
+    private static class ObjectBuilder implements DTOVisitor {
+
+        @Override
+        public void visitObject(FedoraObject obj) {
         }
-        return date;
-    }
 
-    private static State parseState(String value, String kind) {
-        if (value == null) return null;
-        try {
-            return State.forShortName(value);
-        } catch (IllegalArgumentException e) {
-            try {
-                return State.forLongName(value);
-            } catch (IllegalArgumentException e2) {
-                logger.warn("Ignoring unrecognized " + kind + " state value: "
-                        + value);
-                return null;
-            }
+        @Override
+        public void visitDatastream(FedoraObject obj, Datastream ds) {
+            obj.putDatastream(ds);
         }
-    }
 
-    private static ControlGroup parseControlGroup(String value) {
-        if (value == null) return null;
-        try {
-            return ControlGroup.forShortName(value);
-        } catch (IllegalArgumentException e) {
-            logger.warn("Ignoring unrecognized datastream control group value: "
-                    + value);
-            return null;
+        @Override
+        public void visitDatastreamVersion(FedoraObject obj,
+                                           Datastream ds,
+                                           DatastreamVersion dsv) {
+            ds.versions().add(dsv);
         }
-    }
 
-    private static Boolean parseVersionable(String value) {
-        if (value == null) return null;
-        if (value.equalsIgnoreCase("true") || value.equals("1")) {
-            return true;
-            
-        } else if (value.equalsIgnoreCase("false") || value.equals("0")) {
-            return false;
-        } else {
-            logger.warn("Ignoring unrecognized datastream versionable value: "
-                    + value);
-            return null;
+        @Override
+        public void endObject(FedoraObject obj) {
         }
     }
 
-    private static Long parseLong(String value, String kind) {
-        if (value == null) return null;
-        try {
-            return Long.parseLong(value);
-        } catch (NumberFormatException e) {
-            logger.warn("Ignoring invalid " + kind + " value: " + value);
-            return null;
+    // reads a direct buffer, leaving the given instance unchanged
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
         }
-    }
 
-    private static URI parseURI(String value, String kind) {
-        if (value == null) return null;
-        try {
-            return new URI(value);
-        } catch (URISyntaxException e) {
-            logger.warn("Ignoring malformed " + kind + " value:");
-            return null;
+        @Override
+        public int read() {
+            if (!buffer.hasRemaining()) return -1;
+            return buffer.get() & 0xff;
         }
-    }
 
-    private static Set<URI> parseAltIds(String value) {
-        Set<URI> set = new HashSet<URI>();
-        if (value != null) {
-            for (String uriString: value.split("\\s+")) {
-                URI uri = parseURI(uriString, "datastream altId");
-                if (uri != null) set.add(uri);
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
             }
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
         }
-        return set;
     }
 
 }
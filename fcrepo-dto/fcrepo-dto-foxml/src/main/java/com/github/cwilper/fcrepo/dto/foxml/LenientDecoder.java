@@ -0,0 +1,170 @@
+package com.github.cwilper.fcrepo.dto.foxml;
+
+import com.github.cwilper.fcrepo.dto.core.ControlGroup;
+import com.github.cwilper.fcrepo.dto.core.State;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * Decodes attribute values the way {@link FOXMLReader} accepts them,
+ * returning <code>null</code> rather than throwing when a value is
+ * malformed.
+ * <p>
+ * Malformed values are common in legacy data, and the exception-based
+ * parsing methods of the JDK and the DTO enums spend most of their time
+ * constructing stack traces for them. These methods recognize the accepted
+ * forms directly instead.
+ */
+final class LenientDecoder {
+
+    private static final long MIN_LONG_DIV_10 = Long.MIN_VALUE / 10;
+
+    private LenientDecoder() { }
+
+    /**
+     * Decodes a state from its short or long name.
+     *
+     * @param value the non-null value.
+     * @return the state, or <code>null</code> if not recognized.
+     */
+    static State decodeState(String value) {
+        switch (value.length()) {
+            case 1:
+                return stateForInitial(value.charAt(0));
+            case 6:
+            case 7:
+            case 8:
+                State state = stateForInitial(value.charAt(0));
+                if (state != null && state.longName().equals(value)) {
+                    return state;
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private static State stateForInitial(char c) {
+        switch (c) {
+            case 'A': return State.ACTIVE;
+            case 'I': return State.INACTIVE;
+            case 'D': return State.DELETED;
+            default: return null;
+        }
+    }
+
+    /**
+     * Decodes a control group from its short name.
+     *
+     * @param value the non-null value.
+     * @return the control group, or <code>null</code> if not recognized.
+     */
+    static ControlGroup decodeControlGroup(String value) {
+        if (value.length() != 1) return null;
+        switch (value.charAt(0)) {
+            case 'E': return ControlGroup.EXTERNAL;
+            case 'M': return ControlGroup.MANAGED;
+            case 'R': return ControlGroup.REDIRECT;
+            case 'X': return ControlGroup.INLINE_XML;
+            default: return null;
+        }
+    }
+
+    /**
+     * Decodes a boolean from <code>true</code> or <code>false</code> (in any
+     * case), <code>1</code>, or <code>0</code>.
+     *
+     * @param value the non-null value.
+     * @return the boolean, or <code>null</code> if not recognized.
+     */
+    static Boolean decodeBoolean(String value) {
+        if (value.equalsIgnoreCase("true") || value.equals("1")) {
+            return Boolean.TRUE;
+        } else if (value.equalsIgnoreCase("false") || value.equals("0")) {
+            return Boolean.FALSE;
+        }
+        return null;
+    }
+
+    /**
+     * Decodes a long, accepting the same input as
+     * {@link Long#parseLong(String)}.
+     *
+     * @param value the non-null value.
+     * @return the long, or <code>null</code> if malformed or out of range.
+     */
+    static Long decodeLong(String value) {
+        int len = value.length();
+        if (len == 0) return null;
+        int i = 0;
+        boolean negative = false;
+        char first = value.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++i == len) return null;
+        }
+        // accumulate negatively so that Long.MIN_VALUE fits
+        long result = 0;
+        for (; i < len; i++) {
+            int digit = Character.digit(value.charAt(i), 10);
+            if (digit < 0 || result < MIN_LONG_DIV_10) return null;
+            result *= 10;
+            if (result < Long.MIN_VALUE + digit) return null;
+            result -= digit;
+        }
+        if (negative) return result;
+        if (result == Long.MIN_VALUE) return null;
+        return -result;
+    }
+
+    /**
+     * Decodes a URI. Values with characters that can never appear in a URI
+     * or malformed escapes are rejected without attempting to parse them.
+     *
+     * @param value the non-null value.
+     * @return the URI, or <code>null</code> if malformed.
+     */
+    static URI decodeURI(String value) {
+        if (!isPossibleURI(value)) return null;
+        try {
+            return new URI(value);
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Tells whether the given value might be a URI, judging only by the
+     * characters it contains.
+     *
+     * @param value the non-null value.
+     * @return false if the value is certainly not a URI.
+     */
+    static boolean isPossibleURI(String value) {
+        int len = value.length();
+        for (int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            if (c == '%') {
+                if (i + 2 >= len || !isHex(value.charAt(i + 1))
+                        || !isHex(value.charAt(i + 2))) {
+                    return false;
+                }
+                i += 2;
+            } else if (c <= ' ' || c == '"' || c == '<' || c == '>'
+                    || c == '\\' || c == '^' || c == '`' || c == '{'
+                    || c == '|' || c == '}' || c == 0x7f
+                    || Character.isISOControl(c)
+                    || Character.isSpaceChar(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f')
+                || (c >= 'A' && c <= 'F');
+    }
+
+}
@@ -0,0 +1,396 @@
+package com.github.cwilper.fcrepo.dto.foxml;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the exact bytes of the element within each <code>xmlContent</code>
+ * element of a FOXML document held in a buffer, as it is being parsed by a
+ * {@link #wrap(XMLStreamReader) wrapped} StAX reader, so that inline XML
+ * can be taken as written rather than re-serialized event by event.
+ * <p>
+ * As with {@link BinaryContentLocator}, the buffer is scanned separately
+ * from the parser, at the byte level, and lazily. Elements are matched by
+ * their ordinal position among <code>xmlContent</code> elements that are
+ * not themselves within one.
+ * <p>
+ * Only UTF-8 documents without a DOCTYPE declaration can be scanned, since
+ * entities and default attributes declared in one would change the
+ * meaning of content taken out of the document. Elements containing
+ * character references or carriage returns are not taken as written,
+ * since re-serializing them normalizes the characters they stand for.
+ */
+class XMLContentLocator {
+
+    private static final byte[] XML_CONTENT = ascii(Constants.xmlContent);
+
+    private final ByteBuffer buffer;
+    private final int start;
+    private final int end;
+
+    private boolean scannable;
+    private int pos;
+
+    // ordinal of the last xmlContent element seen by each side
+    private int scannedCount;
+    private int parsedCount;
+
+    // depth within an xmlContent element, or zero if not within one
+    private int scannedInlineDepth;
+    private int parsedInlineDepth;
+
+    /**
+     * Creates an instance.
+     *
+     * @param buffer the document, from its position to its limit. Neither
+     *        it nor its content may be changed while this instance is in
+     *        use.
+     */
+    XMLContentLocator(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.start = buffer.position();
+        this.end = buffer.limit();
+        this.pos = start;
+        int first = byteAt(start);
+        // rule out UTF-16 and other encodings where markup isn't ascii
+        scannable = first != 0x00 && first != 0xFE && first != 0xFF;
+    }
+
+    /**
+     * Wraps the given reader so that the elements it encounters are counted.
+     * All parsing must be done through the returned reader.
+     *
+     * @param reader the reader to wrap, which must not have been advanced.
+     * @return the wrapped reader.
+     */
+    XMLStreamReader wrap(XMLStreamReader reader) {
+        String encoding = reader.getCharacterEncodingScheme();
+        if (encoding != null && !encoding.equalsIgnoreCase("UTF-8")) {
+            scannable = false;
+        }
+        return new StreamReaderDelegate(reader) {
+            @Override
+            public int next() throws XMLStreamException {
+                return parsed(this, super.next());
+            }
+            @Override
+            public int nextTag() throws XMLStreamException {
+                return parsed(this, super.nextTag());
+            }
+        };
+    }
+
+    private int parsed(XMLStreamReader reader, int event) {
+        if (event == XMLStreamConstants.START_ELEMENT) {
+            if (parsedInlineDepth > 0) {
+                parsedInlineDepth++;
+            } else if (reader.getLocalName().equals(Constants.xmlContent)) {
+                parsedInlineDepth = 1;
+                parsedCount++;
+            }
+        } else if (event == XMLStreamConstants.END_ELEMENT
+                && parsedInlineDepth > 0) {
+            parsedInlineDepth--;
+        }
+        return event;
+    }
+
+    /**
+     * Reads the element the given reader is positioned at, which must be
+     * the child of an <code>xmlContent</code> element, as written in the
+     * buffer. Prefixed namespaces that it uses but that are declared
+     * outside of it are declared on the copy's root element.
+     * <p>
+     * If successful, the reader is left positioned at the element's
+     * END_ELEMENT event. Otherwise, it is not moved.
+     *
+     * @param r the wrapped reader.
+     * @return the UTF-8 encoded element, or <code>null</code> if it can't
+     *         be located.
+     * @throws IOException if the namespace declarations can't be encoded.
+     * @throws XMLStreamException if the element can't be parsed.
+     */
+    byte[] readElement(XMLStreamReader r)
+            throws IOException, XMLStreamException {
+        int[] range = locate();
+        if (range == null || !isVerbatim(range)) return null;
+        Map<String, String> undeclared = skipElement(r);
+        byte[] bytes = new byte[range[1]];
+        ByteBuffer source = buffer.duplicate();
+        source.limit(range[0] + range[1]);
+        source.position(range[0]);
+        source.get(bytes);
+        if (undeclared.isEmpty()) return bytes;
+        return declare(bytes, undeclared);
+    }
+
+    // gets {offset, length} of the element within the current xmlContent
+    private int[] locate() {
+        if (!scannable || parsedInlineDepth != 2) return null;
+        while (scannedCount < parsedCount) {
+            if (!scanToNextXMLContent()) return null;
+        }
+        if (scannedInlineDepth != 1) return null;
+        return scanElement();
+    }
+
+    // tells whether the given range is free of character references and
+    // carriage returns, which re-serialization doesn't preserve, so that
+    // taking it as written gives the same result
+    private boolean isVerbatim(int[] range) {
+        int rangeEnd = range[0] + range[1];
+        for (int i = range[0]; i < rangeEnd; i++) {
+            int b = byteAt(i);
+            if (b == '\r' || (b == '&' && byteAt(i + 1) == '#')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // skips the element the reader is positioned at, returning the prefixes
+    // it uses without declaring, and the namespace bound to each
+    private static Map<String, String> skipElement(XMLStreamReader r)
+            throws XMLStreamException {
+        Map<String, String> undeclared = new LinkedHashMap<String, String>();
+        List<String> declared = new ArrayList<String>();
+        int[] declaredCounts = new int[16];
+        int depth = 0;
+        while (true) {
+            if (r.getEventType() == XMLStreamConstants.START_ELEMENT) {
+                if (depth == declaredCounts.length) {
+                    declaredCounts = Arrays.copyOf(declaredCounts, depth * 2);
+                }
+                declaredCounts[depth++] = r.getNamespaceCount();
+                for (int i = 0; i < r.getNamespaceCount(); i++) {
+                    declared.add(r.getNamespacePrefix(i));
+                }
+                use(r.getPrefix(), r.getNamespaceURI(), declared, undeclared);
+                for (int i = 0; i < r.getAttributeCount(); i++) {
+                    use(r.getAttributePrefix(i), r.getAttributeNamespace(i),
+                            declared, undeclared);
+                }
+            } else if (r.getEventType() == XMLStreamConstants.END_ELEMENT) {
+                int count = declaredCounts[--depth];
+                for (int i = 0; i < count; i++) {
+                    declared.remove(declared.size() - 1);
+                }
+                if (depth == 0) break;
+            }
+            r.next();
+        }
+        return undeclared;
+    }
+
+    private static void use(String prefix, String uri, List<String> declared,
+                            Map<String, String> undeclared) {
+        if (prefix == null || prefix.length() == 0 || uri == null
+                || prefix.equals(XMLConstants.XML_NS_PREFIX)
+                || declared.contains(prefix)) {
+            return;
+        }
+        undeclared.put(prefix, uri);
+    }
+
+    // adds the given namespace declarations to the root element
+    private static byte[] declare(byte[] element,
+                                  Map<String, String> namespaces)
+            throws IOException {
+        int nameEnd = 1;
+        while (nameEnd < element.length && !isNameEnd(element[nameEnd])) {
+            nameEnd++;
+        }
+        StringBuilder s = new StringBuilder();
+        for (Map.Entry<String, String> ns: namespaces.entrySet()) {
+            s.append(" xmlns:").append(ns.getKey()).append("=\"");
+            String uri = ns.getValue();
+            for (int i = 0; i < uri.length(); i++) {
+                char c = uri.charAt(i);
+                if (c == '&') {
+                    s.append("&amp;");
+                } else if (c == '<') {
+                    s.append("&lt;");
+                } else if (c == '"') {
+                    s.append("&quot;");
+                } else {
+                    s.append(c);
+                }
+            }
+            s.append('"');
+        }
+        byte[] declarations = s.toString().getBytes(Constants.CHAR_ENCODING);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                element.length + declarations.length);
+        out.write(element, 0, nameEnd);
+        out.write(declarations, 0, declarations.length);
+        out.write(element, nameEnd, element.length - nameEnd);
+        return out.toByteArray();
+    }
+
+    // scans to just past the next xmlContent start tag outside of
+    // xmlContent, returning false if there are no more, or the document
+    // can't be scanned
+    private boolean scanToNextXMLContent() {
+        int b;
+        while ((b = byteAt(pos++)) != -1) {
+            if (b != '<') continue;
+            b = byteAt(pos);
+            if (b == '!') {
+                if (!skipCommentOrCData()) {
+                    // a DOCTYPE declaration
+                    scannable = false;
+                    return false;
+                }
+            } else if (b == '?') {
+                skipPast("?>");
+            } else if (b == '/') {
+                skipTag();
+                if (scannedInlineDepth > 0) scannedInlineDepth--;
+            } else {
+                int nameStart = pos;
+                boolean selfClosing = skipTag();
+                if (scannedInlineDepth > 0) {
+                    if (!selfClosing) scannedInlineDepth++;
+                } else if (localNameEquals(nameStart, XML_CONTENT)) {
+                    scannedCount++;
+                    if (!selfClosing) {
+                        scannedInlineDepth = 1;
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // scans past the first element following an xmlContent start tag,
+    // returning its range, or null if there is none
+    private int[] scanElement() {
+        int elementStart = -1;
+        int depth = 0;
+        int b;
+        while ((b = byteAt(pos++)) != -1) {
+            if (b != '<') continue;
+            b = byteAt(pos);
+            if (b == '!') {
+                if (!skipCommentOrCData()) return null;
+            } else if (b == '?') {
+                skipPast("?>");
+            } else if (b == '/') {
+                skipTag();
+                if (depth == 0) {
+                    // end of an empty xmlContent
+                    scannedInlineDepth = 0;
+                    return null;
+                }
+                if (--depth == 0) break;
+            } else {
+                if (depth == 0) elementStart = pos - 1;
+                if (!skipTag()) {
+                    depth++;
+                } else if (depth == 0) {
+                    break;
+                }
+            }
+        }
+        if (b == -1) return null;
+        return new int[] { elementStart, pos - elementStart };
+    }
+
+    // skips a comment or CDATA section, starting at '!', returning false if
+    // it's neither
+    private boolean skipCommentOrCData() {
+        if (startsWith(pos, "!--")) {
+            skipPast("-->");
+        } else if (startsWith(pos, "![CDATA[")) {
+            skipPast("]]>");
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    // skips to just past the end of a tag, returning whether it self-closed
+    private boolean skipTag() {
+        int quote = 0;
+        int last = 0;
+        int b;
+        while ((b = byteAt(pos++)) != -1) {
+            if (quote != 0) {
+                if (b == quote) quote = 0;
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return last == '/';
+            }
+            last = b;
+        }
+        return false;
+    }
+
+    private void skipPast(String terminator) {
+        while (byteAt(pos) != -1) {
+            if (startsWith(pos, terminator)) {
+                pos += terminator.length();
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private boolean startsWith(int offset, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (byteAt(offset + i) != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // tells whether the tag name starting at the given offset has the given
+    // local name, regardless of prefix
+    private boolean localNameEquals(int nameStart, byte[] localName) {
+        int nameEnd = nameStart;
+        int b;
+        while ((b = byteAt(nameEnd)) != -1 && !isNameEnd(b)) {
+            nameEnd++;
+        }
+        int localStart = nameEnd - localName.length;
+        if (localStart < nameStart) return false;
+        if (localStart > nameStart && byteAt(localStart - 1) != ':') {
+            return false;
+        }
+        for (int i = 0; i < localName.length; i++) {
+            if (byteAt(localStart + i) != localName[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean isNameEnd(int b) {
+        return b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\r'
+                || b == '\n';
+    }
+
+    private int byteAt(int offset) {
+        if (offset < start || offset >= end) return -1;
+        return buffer.get(offset) & 0xff;
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) s.charAt(i);
+        }
+        return bytes;
+    }
+
+}
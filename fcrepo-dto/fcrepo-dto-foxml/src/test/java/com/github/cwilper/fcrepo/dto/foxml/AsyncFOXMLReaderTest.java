@@ -0,0 +1,235 @@
+package com.github.cwilper.fcrepo.dto.foxml;
+
+import com.github.cwilper.fcrepo.dto.core.Datastream;
+import com.github.cwilper.fcrepo.dto.core.DatastreamVersion;
+import com.github.cwilper.fcrepo.dto.core.FedoraObject;
+import com.github.cwilper.fcrepo.dto.core.io.DTOVisitor;
+import com.github.cwilper.ttff.AbstractSink;
+import com.github.cwilper.ttff.Source;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for <code>AsyncFOXMLReader</code>.
+ */
+public class AsyncFOXMLReaderTest {
+
+    private FOXMLReader reader;
+    private AsyncFOXMLReader asyncReader;
+
+    @Before
+    public void setUp() {
+        reader = new FOXMLReader();
+        asyncReader = new AsyncFOXMLReader(reader);
+    }
+
+    @After
+    public void tearDown() {
+        reader.close();
+    }
+
+    @Test
+    public void sameAsBlockingReader() throws IOException {
+        String[] names = new String[] {
+                "dsvMulti", "dsvInlineXML", "dsvInlineRDF", "dsvAltIdsMulti",
+                "dsvContentDigest", "objStateActive", "objEmpty"
+        };
+        for (String name: names) {
+            byte[] foxml = IOUtils.toByteArray(
+                    FOXMLReaderTest.getResource(name));
+            FedoraObject expected = reader.readObject(
+                    FOXMLReaderTest.getResource(name));
+            for (int chunkSize: new int[] { 1, 7, 4096 }) {
+                List<FedoraObject> objects = new ArrayList<FedoraObject>();
+                AsyncFOXMLReader.Session session = asyncReader.newSession(
+                        new ListSink(objects));
+                feed(session, foxml, chunkSize);
+                Assert.assertEquals(1, session.endOfInput());
+                Assert.assertEquals(name + "/" + chunkSize, expected,
+                        objects.get(0));
+            }
+        }
+    }
+
+    @Test
+    public void escapedWhitespaceKept() throws IOException {
+        byte[] foxml = ("<digitalObject xmlns='" + Constants.xmlns + "'"
+                + " PID='test:1'><objectProperties>"
+                + "<property NAME='" + Constants.LABEL_URI + "'"
+                + " VALUE='a&#10;b&#9;c&#13;d'/></objectProperties>"
+                + "<datastream ID='DS' CONTROL_GROUP='X'>"
+                + "<datastreamVersion ID='DS.0' LABEL='x&#10;y'>"
+                + "<xmlContent><doc a='1&#10;2'>3&#13;4</doc></xmlContent>"
+                + "</datastreamVersion></datastream>"
+                + "</digitalObject>").getBytes("UTF-8");
+        FedoraObject expected = reader.readObject(
+                new ByteArrayInputStream(foxml));
+        Assert.assertEquals("a\nb\tc\rd", expected.label());
+        List<FedoraObject> objects = new ArrayList<FedoraObject>();
+        AsyncFOXMLReader.Session session = asyncReader.newSession(
+                new ListSink(objects));
+        feed(session, foxml, 7);
+        Assert.assertEquals(1, session.endOfInput());
+        Assert.assertEquals(expected, objects.get(0));
+    }
+
+    @Test
+    public void wrappedObjects() throws IOException {
+        byte[] foxml = ("<objects xmlns:foxml='" + Constants.xmlns + "'>"
+                + "<foxml:digitalObject PID='test:1'>"
+                + "<foxml:datastream ID='DC' CONTROL_GROUP='X'>"
+                + "<foxml:datastreamVersion ID='DC.0'><foxml:xmlContent>"
+                + "<dc:title xmlns:dc='http://purl.org/dc/elements/1.1/'>"
+                + "One &amp; <![CDATA[only]]></dc:title>"
+                + "</foxml:xmlContent></foxml:datastreamVersion>"
+                + "</foxml:datastream>"
+                + "</foxml:digitalObject>"
+                + "<foxml:digitalObject PID='test:2'/>"
+                + "</objects>").getBytes("UTF-8");
+        List<FedoraObject> objects = new ArrayList<FedoraObject>();
+        AsyncFOXMLReader.Session session = asyncReader.newSession(
+                new ListSink(objects));
+        feed(session, foxml, 5);
+        Assert.assertEquals(2, session.endOfInput());
+        Source<FedoraObject> expected = reader.readObjects(
+                new ByteArrayInputStream(foxml));
+        Assert.assertEquals(expected.next(), objects.get(0));
+        Assert.assertEquals(expected.next(), objects.get(1));
+        Assert.assertFalse(expected.hasNext());
+        Assert.assertEquals("test:2", objects.get(1).pid());
+    }
+
+    @Test
+    public void objectReadAsSoonAsComplete() throws IOException {
+        List<FedoraObject> objects = new ArrayList<FedoraObject>();
+        AsyncFOXMLReader.Session session = asyncReader.newSession(
+                new ListSink(objects));
+        feed(session, ("<objects><digitalObject xmlns='" + Constants.xmlns
+                + "' PID='test:1'/><digitalObj").getBytes("UTF-8"), 4096);
+        Assert.assertEquals(1, objects.size());
+        session.close();
+    }
+
+    @Test
+    public void visitor() throws IOException {
+        final List<String> events = new ArrayList<String>();
+        AsyncFOXMLReader.Session session = asyncReader.newSession(
+                new DTOVisitor() {
+            @Override
+            public void visitObject(FedoraObject obj) {
+                events.add("object");
+            }
+
+            @Override
+            public void visitDatastream(FedoraObject obj, Datastream ds) {
+                events.add(ds.id());
+            }
+
+            @Override
+            public void visitDatastreamVersion(FedoraObject obj,
+                                               Datastream ds,
+                                               DatastreamVersion dsv) {
+                events.add(dsv.id());
+            }
+
+            @Override
+            public void endObject(FedoraObject obj) {
+                events.add("end");
+            }
+        });
+        feed(session, IOUtils.toByteArray(
+                FOXMLReaderTest.getResource("dsvMulti")), 16);
+        session.endOfInput();
+        Assert.assertEquals("[object, ds, ds.2, ds.1, ds.3, ds.4, end]",
+                events.toString());
+    }
+
+    @Test (expected=IOException.class)
+    public void malformed() throws IOException {
+        AsyncFOXMLReader.Session session = asyncReader.newSession(
+                new ListSink(new ArrayList<FedoraObject>()));
+        feed(session, "<digitalObject></wrong>".getBytes("UTF-8"), 4096);
+    }
+
+    @Test (expected=IOException.class)
+    public void truncated() throws IOException {
+        AsyncFOXMLReader.Session session = asyncReader.newSession(
+                new ListSink(new ArrayList<FedoraObject>()));
+        feed(session, "<digitalObject><datastream".getBytes("UTF-8"), 4096);
+        session.endOfInput();
+    }
+
+    @Test
+    public void objectTooLarge() throws IOException {
+        asyncReader.setMaxObjectSize(100);
+        List<FedoraObject> objects = new ArrayList<FedoraObject>();
+        AsyncFOXMLReader.Session session = asyncReader.newSession(
+                new ListSink(objects));
+        StringBuilder foxml = new StringBuilder("<objects>"
+                + "<digitalObject PID='test:1'/>"
+                + "<digitalObject PID='test:2'><datastream ID='M'>"
+                + "<datastreamVersion ID='M.0'><binaryContent>");
+        for (int i = 0; i < 100; i++) {
+            foxml.append("dGVzdA==");
+        }
+        try {
+            feed(session, foxml.toString().getBytes("UTF-8"), 16);
+            Assert.fail("Expected IOException");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("maximum size"));
+        }
+        Assert.assertEquals(1, objects.size());
+        try {
+            session.feed(ByteBuffer.wrap(new byte[1]));
+            Assert.fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // session finished
+        }
+    }
+
+    @Test (expected=IllegalStateException.class)
+    public void feedAfterEnd() throws IOException {
+        AsyncFOXMLReader.Session session = asyncReader.newSession(
+                new ListSink(new ArrayList<FedoraObject>()));
+        feed(session, "<digitalObject/>".getBytes("UTF-8"), 4096);
+        session.endOfInput();
+        session.feed(ByteBuffer.wrap(new byte[1]));
+    }
+
+    // feeds the content in chunks, reusing a single buffer
+    private static void feed(AsyncFOXMLReader.Session session,
+                             byte[] content,
+                             int chunkSize) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(chunkSize);
+        for (int i = 0; i < content.length; i += chunkSize) {
+            buffer.clear();
+            buffer.put(content, i, Math.min(chunkSize, content.length - i));
+            buffer.flip();
+            session.feed(buffer);
+            Assert.assertFalse(buffer.hasRemaining());
+        }
+    }
+
+    private static class ListSink extends AbstractSink<FedoraObject> {
+
+        private final List<FedoraObject> objects;
+
+        ListSink(List<FedoraObject> objects) {
+            this.objects = objects;
+        }
+
+        @Override
+        public void put(FedoraObject obj) {
+            objects.add(obj);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.cwilper.fcrepo.dto.foxml;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+public class Base64CharDecoderTest {
+
+    private final Base64CharDecoder decoder = new Base64CharDecoder();
+
+    @Test
+    public void empty() throws IOException {
+        assertDecoded("", 1);
+    }
+
+    @Test
+    public void padded() throws IOException {
+        assertDecoded("YQ==", 1);
+        assertDecoded("YWI=", 1);
+        assertDecoded("YWJj", 1);
+    }
+
+    @Test
+    public void unpadded() throws IOException {
+        assertDecoded("YQ", 1);
+        assertDecoded("YWI", 1);
+    }
+
+    @Test
+    public void dataAfterPadIgnored() throws IOException {
+        assertDecoded("YQ==YWJj", 1);
+    }
+
+    @Test
+    public void whitespaceAndInvalidIgnored() throws IOException {
+        assertDecoded("\n  YW\r\nJj\t*YWéI=\n", 1);
+    }
+
+    @Test
+    public void urlSafe() throws IOException {
+        assertDecoded("-_-_", 1);
+    }
+
+    @Test
+    public void chunkedRandom() throws IOException {
+        Random random = new Random(42);
+        for (int size = 0; size < 20000; size += 997) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            String encoded = new String(Base64.encodeBase64Chunked(data),
+                    "US-ASCII");
+            for (int chunkSize = 1; chunkSize < 200; chunkSize += 37) {
+                assertDecoded(encoded, chunkSize);
+            }
+        }
+    }
+
+    @Test
+    public void reusable() throws IOException {
+        assertDecoded("YWJj", 1);
+        assertDecoded("YQ", 3);
+        assertDecoded("YQ==YWJj", 2);
+        assertDecoded("YWJj", 4);
+    }
+
+    private void assertDecoded(String encoded, int chunkSize)
+            throws IOException {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        char[] chars = encoded.toCharArray();
+        decoder.start(sink);
+        for (int i = 0; i < chars.length; i += chunkSize) {
+            decoder.decode(chars, i, Math.min(chunkSize, chars.length - i));
+        }
+        decoder.finish();
+        Assert.assertArrayEquals(Base64.decodeBase64(
+                encoded.getBytes("UTF-8")), sink.toByteArray());
+    }
+
+}
@@ -229,6 +229,21 @@ public class FOXMLReadWriteTest {
         writeThenReadCheck("dsvInlineXML");
     }
 
+    @Test
+    public void dsvInlineXMLSpilled() throws IOException {
+        Datastream ds = new Datastream("ds").controlGroup(
+                ControlGroup.INLINE_XML);
+        ds.addVersion(null).inlineXML(new InlineXML(
+                "<doc></doc>".getBytes("UTF-8"), 0));
+        obj.putDatastream(ds);
+        writeCheck("dsvInlineXML", null);
+        FOXMLReader reader = new FOXMLReader();
+        reader.setMaxInMemoryXMLSize(0);
+        FedoraObject result = readCheck("dsvInlineXML", reader, true);
+        Assert.assertEquals(11, result.datastreams().get("ds").versions()
+                .first().inlineXML().size());
+    }
+
     @Test
     public void dsvInlineRDF() throws IOException {
         Datastream ds = new Datastream("ds").controlGroup(
@@ -0,0 +1,714 @@
+package com.github.cwilper.fcrepo.dto.foxml;
+
+import com.github.cwilper.fcrepo.dto.core.Datastream;
+import com.github.cwilper.fcrepo.dto.core.DatastreamVersion;
+import com.github.cwilper.fcrepo.dto.core.FedoraObject;
+import com.github.cwilper.fcrepo.dto.core.InlineXMLCache;
+import com.github.cwilper.fcrepo.dto.core.State;
+import com.github.cwilper.fcrepo.dto.core.io.ContentHandler;
+import com.github.cwilper.fcrepo.dto.core.io.DTOVisitor;
+import com.github.cwilper.fcrepo.dto.core.io.ReadProjection;
+import com.github.cwilper.fcrepo.dto.core.io.StAXBackend;
+import com.github.cwilper.ttff.Source;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Unit tests for reader-specific features of <code>FOXMLReader</code>.
+ */
+public class FOXMLReaderTest {
+
+    private FOXMLReader reader;
+
+    @Before
+    public void setUp() {
+        reader = new FOXMLReader();
+    }
+
+    @After
+    public void tearDown() {
+        reader.close();
+    }
+
+    @Test
+    public void visitInDocumentOrder() throws IOException {
+        RecordingVisitor visitor = new RecordingVisitor();
+        reader.readObject(getResource("dsvMulti"), visitor);
+        Assert.assertEquals("[object, ds, ds.2, ds.1, ds.3, ds.4, end]",
+                visitor.events.toString());
+    }
+
+    @Test
+    public void visitDoesNotRetainParts() throws IOException {
+        RecordingVisitor visitor = new RecordingVisitor();
+        reader.readObject(getResource("dsMulti"), visitor);
+        Assert.assertEquals("[object, ds1, ds2, end]",
+                visitor.events.toString());
+        Assert.assertEquals(0, visitor.obj.datastreams().size());
+        Assert.assertEquals(0, visitor.ds.versions().size());
+    }
+
+    @Test
+    public void visitSeesInlineXML() throws IOException {
+        RecordingVisitor visitor = new RecordingVisitor();
+        reader.readObject(getResource("dsvInlineXML"), visitor);
+        Assert.assertNotNull(visitor.dsv.inlineXML());
+        Assert.assertEquals("<doc></doc>", visitor.dsv.inlineXML().value());
+    }
+
+    @Test
+    public void visitSeesHandledBinaryContent() throws IOException {
+        RecordingVisitor visitor = new RecordingVisitor();
+        reader.readObject(getResource("dsvBinaryContent"), visitor);
+        Assert.assertNotNull(visitor.dsv.contentLocation());
+        Assert.assertEquals("file", visitor.dsv.contentLocation().getScheme());
+    }
+
+    @Test
+    public void readObjectMatchesVisitedParts() throws IOException {
+        final FedoraObject expected = new FedoraObject();
+        reader.readObject(getResource("dsvMulti"), new RecordingVisitor() {
+            @Override
+            public void visitDatastreamVersion(FedoraObject obj,
+                                               Datastream ds,
+                                               DatastreamVersion dsv) {
+                if (!expected.datastreams().containsKey(ds.id())) {
+                    expected.putDatastream(ds);
+                }
+                expected.datastreams().get(ds.id()).versions().add(dsv);
+            }
+        });
+        Assert.assertEquals(expected,
+                reader.readObject(getResource("dsvMulti")));
+    }
+
+    @Test (expected=NullPointerException.class)
+    public void nullVisitor() throws IOException {
+        reader.readObject(getResource("objEmpty"), null);
+    }
+
+    @Test
+    public void readObjectsWrapped() throws IOException {
+        Source<FedoraObject> objects = reader.readObjects(toStream(
+                "<objects xmlns:foxml='" + Constants.xmlns + "'>"
+                + "<foxml:digitalObject PID='test:1'/>"
+                + "<foxml:digitalObject PID='test:2'>"
+                + "<foxml:datastream ID='ds'>"
+                + "<foxml:datastreamVersion ID='ds.0'/>"
+                + "</foxml:datastream>"
+                + "</foxml:digitalObject>"
+                + "<foxml:digitalObject PID='test:3'>"
+                + "<foxml:objectProperties>"
+                + "<foxml:property NAME='" + Constants.STATE_URI + "'"
+                + " VALUE='A'/>"
+                + "</foxml:objectProperties>"
+                + "</foxml:digitalObject>"
+                + "</objects>"));
+        FedoraObject obj = objects.next();
+        Assert.assertEquals("test:1", obj.pid());
+        Assert.assertEquals(0, obj.datastreams().size());
+        obj = objects.next();
+        Assert.assertEquals("test:2", obj.pid());
+        Assert.assertNull(obj.state());
+        Assert.assertEquals(1, obj.datastreams().get("ds").versions().size());
+        obj = objects.next();
+        Assert.assertEquals("test:3", obj.pid());
+        Assert.assertEquals(State.ACTIVE, obj.state());
+        Assert.assertEquals(0, obj.datastreams().size());
+        Assert.assertFalse(objects.hasNext());
+    }
+
+    @Test
+    public void readObjectsSingle() throws IOException {
+        Source<FedoraObject> objects = reader.readObjects(
+                getResource("dsvMulti"));
+        Assert.assertEquals(reader.getInstance().readObject(
+                getResource("dsvMulti")), objects.next());
+        Assert.assertFalse(objects.hasNext());
+    }
+
+    @Test
+    public void readObjectsEmpty() throws IOException {
+        Assert.assertFalse(reader.readObjects(toStream("<objects/>"))
+                .hasNext());
+    }
+
+    @Test
+    public void readObjectFromFile() throws Exception {
+        Assert.assertEquals(reader.readObject(getResource("dsvMulti")),
+                reader.readObject(getResourceFile("dsvMulti")));
+    }
+
+    @Test
+    public void readObjectFromChannel() throws Exception {
+        FileInputStream in = new FileInputStream(
+                getResourceFile("dsvBinaryContent"));
+        FedoraObject obj = reader.readObject(in.getChannel());
+        Assert.assertFalse(in.getChannel().isOpen());
+        Assert.assertNotNull(getFirstVersion(obj, "ds").contentLocation());
+    }
+
+    @Test
+    public void lazyBinaryContent() throws Exception {
+        FedoraObject eager = reader.readObject(getResource("lazyBinaryContent"));
+        reader.setLazyBinaryContent(true);
+        FedoraObject lazy = reader.readObject(
+                getResourceFile("lazyBinaryContent"));
+        Assert.assertEquals(
+                getFirstVersion(eager, "X").inlineXML(),
+                getFirstVersion(lazy, "X").inlineXML());
+        assertLazyContent(eager, lazy, "M1", "test", true);
+        assertLazyContent(eager, lazy, "M2", "foobar", false);
+        assertLazyContent(eager, lazy, "M3", "", true);
+        assertLazyContent(eager, lazy, "M4", "baz", true);
+    }
+
+    @Test
+    public void lazyBinaryContentOnlyFromFile() throws IOException {
+        reader.setLazyBinaryContent(true);
+        FedoraObject obj = reader.readObject(getResource("dsvBinaryContent"));
+        Assert.assertEquals("file",
+                getFirstVersion(obj, "ds").contentLocation().getScheme());
+    }
+
+    @Test
+    public void valueDictionaryShared() throws IOException {
+        String xml = "<digitalObject xmlns='" + Constants.xmlns + "'>"
+                + "<datastream ID='ds'><datastreamVersion ID='ds.0'"
+                + " MIMETYPE='text/plain' FORMAT_URI='urn:format'/>"
+                + "</datastream></digitalObject>";
+        DatastreamVersion dsv1 = getFirstVersion(
+                reader.readObject(toStream(xml)), "ds");
+        DatastreamVersion dsv2 = getFirstVersion(
+                ((FOXMLReader) reader.getInstance()).readObject(
+                        toStream(xml)), "ds");
+        Assert.assertSame(dsv1.mimeType(), dsv2.mimeType());
+        Assert.assertSame(dsv1.formatURI(), dsv2.formatURI());
+
+        reader.setValueDictionary(null);
+        DatastreamVersion dsv3 = getFirstVersion(
+                reader.readObject(toStream(xml)), "ds");
+        Assert.assertEquals(dsv1.formatURI(), dsv3.formatURI());
+        Assert.assertNotSame(dsv1.formatURI(), dsv3.formatURI());
+    }
+
+    @Test
+    public void sharedAcrossThreads() throws Exception {
+        final String[] names = new String[] {
+                "dsvMulti", "dsvInlineXML", "dsvAltIdsMulti", "objStateActive"
+        };
+        final FedoraObject[] expected = new FedoraObject[names.length];
+        for (int i = 0; i < names.length; i++) {
+            expected[i] = reader.readObject(getResource(names[i]));
+        }
+        final FOXMLWriter writer = new FOXMLWriter();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int n = 0; n < 50; n++) {
+                            int i = n % names.length;
+                            FedoraObject obj = reader.readObject(
+                                    getResource(names[i]));
+                            Assert.assertEquals(expected[i], obj);
+                            ByteArrayOutputStream out =
+                                    new ByteArrayOutputStream();
+                            writer.writeObject(obj, out);
+                            Assert.assertEquals(expected[i],
+                                    reader.readObject(new ByteArrayInputStream(
+                                            out.toByteArray())));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result: results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+            writer.close();
+        }
+    }
+
+    @Test
+    public void staxBackendsAgree() throws IOException {
+        final String[] names = new String[] {
+                "dsvMulti", "dsvInlineXML", "dsvInlineRDF", "dsvAltIdsMulti",
+                "dsvContentDigest", "objStateActive"
+        };
+        FOXMLWriter writer = new FOXMLWriter();
+        try {
+            for (StAXBackend backend: StAXBackend.values()) {
+                if (!backend.isAvailable()) continue;
+                reader.setStAXBackend(backend);
+                writer.setStAXBackend(backend);
+                FOXMLReader defaultReader = new FOXMLReader();
+                for (String name: names) {
+                    FedoraObject expected = defaultReader.readObject(
+                            getResource(name));
+                    FedoraObject obj = reader.readObject(getResource(name));
+                    Assert.assertEquals(backend + " " + name, expected, obj);
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    writer.writeObject(obj, out);
+                    Assert.assertEquals(backend + " " + name, expected,
+                            defaultReader.readObject(new ByteArrayInputStream(
+                                    out.toByteArray())));
+                }
+                defaultReader.close();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test
+    public void staxBackendIsCopied() {
+        reader.setStAXBackend(StAXBackend.JDK);
+        Assert.assertEquals(StAXBackend.JDK,
+                ((FOXMLReader) reader.getInstance()).getStAXBackend());
+    }
+
+    @Test
+    public void lazyInlineXML() throws Exception {
+        String xml = "<digitalObject xmlns='" + Constants.xmlns + "'>"
+                + "<datastream ID='ds' CONTROL_GROUP='X'>"
+                + "<datastreamVersion ID='ds.0'><xmlContent>"
+                + "<doc b='2' a='1'><empty/></doc>"
+                + "</xmlContent></datastreamVersion></datastream>"
+                + "</digitalObject>";
+        FedoraObject eager = reader.readObject(toStream(xml));
+        reader.setLazyInlineXML(true);
+        FedoraObject lazy = reader.readObject(toStream(xml));
+        Assert.assertEquals(eager, lazy);
+
+        // written back out as read, without canonicalizing
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FOXMLWriter().writeObject(reader.readObject(toStream(xml)), out);
+        String written = out.toString("UTF-8");
+        Assert.assertTrue(written.contains(
+                "<doc b=\"2\" a=\"1\"><empty/></doc>"));
+        Assert.assertEquals(eager, reader.readObject(
+                new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    @Test
+    public void lazyInlineXMLRoundTrip() throws Exception {
+        String xml = "<digitalObject xmlns='" + Constants.xmlns + "'"
+                + " xmlns:dc='http://purl.org/dc/elements/1.1/'>"
+                + "<datastream ID='ds1' CONTROL_GROUP='X'>"
+                + "<datastreamVersion ID='ds1.0'><xmlContent>"
+                + "<doc a='1'><!-- comment --><empty/></doc>"
+                + "</xmlContent></datastreamVersion></datastream>"
+                + "<datastream ID='ds2' CONTROL_GROUP='X'>"
+                + "<datastreamVersion ID='ds2.0'><xmlContent>"
+                + "<dc:title>Title</dc:title>"
+                + "</xmlContent></datastreamVersion></datastream>"
+                + "</digitalObject>";
+        byte[] bytes = xml.getBytes("UTF-8");
+        FedoraObject expected = reader.readObject(ByteBuffer.wrap(bytes));
+        reader.setLazyInlineXML(true);
+        FedoraObject lazy = reader.readObject(ByteBuffer.wrap(bytes));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new FOXMLWriter().writeObject(lazy, out);
+        Assert.assertEquals(expected, new FOXMLReader().readObject(
+                new ByteArrayInputStream(out.toByteArray())));
+        Assert.assertEquals(expected, reader.readObject(
+                new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    @Test
+    public void lazyInlineXMLChecked() throws Exception {
+        // the prefix is declared outside of the content, which is only
+        // accounted for when reading from a buffer
+        String xml = "<digitalObject xmlns='" + Constants.xmlns + "'"
+                + " xmlns:dc='http://purl.org/dc/elements/1.1/'>"
+                + "<datastream ID='ds' CONTROL_GROUP='X'>"
+                + "<datastreamVersion ID='ds.0'><xmlContent>"
+                + "<dc:title>Title</dc:title>"
+                + "</xmlContent></datastreamVersion></datastream>"
+                + "</digitalObject>";
+        reader.setLazyInlineXML(true);
+        try {
+            reader.readObject(toStream(xml));
+            Assert.fail("unbound prefix not reported");
+        } catch (IOException e) {
+            // expected, as when not lazy
+        }
+    }
+
+    @Test
+    public void lazyInlineXMLIsCopied() {
+        reader.setLazyInlineXML(true);
+        Assert.assertTrue(((FOXMLReader) reader.getInstance())
+                .getLazyInlineXML());
+    }
+
+    @Test
+    public void inlineXMLCacheShared() throws IOException {
+        reader.setInlineXMLCache(new InlineXMLCache());
+        FedoraObject obj1 = reader.readObject(getResource("dsvInlineXML"));
+        FedoraObject obj2 = ((FOXMLReader) reader.getInstance()).readObject(
+                getResource("dsvInlineXML"));
+        Assert.assertSame(getFirstVersion(obj1, "ds").inlineXML(),
+                getFirstVersion(obj2, "ds").inlineXML());
+    }
+
+    @Test
+    public void inlineXMLCacheSharedWhenLazy() throws IOException {
+        reader.setInlineXMLCache(new InlineXMLCache());
+        reader.setLazyInlineXML(true);
+        FedoraObject obj1 = reader.readObject(getResource("dsvInlineXML"));
+        FedoraObject obj2 = ((FOXMLReader) reader.getInstance()).readObject(
+                getResource("dsvInlineXML"));
+        Assert.assertSame(getFirstVersion(obj1, "ds").inlineXML(),
+                getFirstVersion(obj2, "ds").inlineXML());
+    }
+
+    @Test
+    public void readObjectFromBuffer() throws Exception {
+        String[] names = new String[] {
+                "dsvMulti", "dsvInlineXML", "dsvInlineRDF", "dsvAltIdsMulti",
+                "dsvContentDigest", "objStateActive"
+        };
+        for (String name: names) {
+            FedoraObject expected = reader.readObject(getResource(name));
+            byte[] bytes = IOUtils.toByteArray(getResource(name));
+            ByteBuffer heap = ByteBuffer.wrap(bytes);
+            Assert.assertEquals(name, expected, reader.readObject(heap));
+            Assert.assertEquals(0, heap.position());
+            ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+            direct.put(bytes).flip();
+            Assert.assertEquals(name, expected, reader.readObject(direct));
+            Assert.assertEquals(0, direct.position());
+        }
+    }
+
+    @Test
+    public void inlineXMLFromBufferTakenAsWritten() throws IOException {
+        String xml = "<digitalObject xmlns='" + Constants.xmlns + "'>"
+                + "<datastream ID='ds' CONTROL_GROUP='X'>"
+                + "<datastreamVersion ID='ds.0'><xmlContent>\n  <!-- c -->"
+                + "<doc a='1'><empty/></doc>\n"
+                + "</xmlContent></datastreamVersion></datastream>"
+                + "</digitalObject>";
+        reader.setLazyInlineXML(true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        getFirstVersion(reader.readObject(ByteBuffer.wrap(
+                xml.getBytes("UTF-8"))), "ds").inlineXML().writeTo(out);
+        Assert.assertEquals("<doc a='1'><empty/></doc>",
+                out.toString("UTF-8"));
+    }
+
+    @Test
+    public void inlineXMLFromBufferSameAsFromStream() throws IOException {
+        String xml = "<digitalObject xmlns='" + Constants.xmlns + "'>"
+                + "<datastream ID='ds' CONTROL_GROUP='X'>"
+                + "<datastreamVersion ID='ds.0'><xmlContent>"
+                + "<doc v='a&#13;b&#9;c'>a&#13;b\r\nc&#x41;</doc>"
+                + "</xmlContent></datastreamVersion></datastream>"
+                + "</digitalObject>";
+        byte[] bytes = xml.getBytes("UTF-8");
+        FedoraObject expected = reader.readObject(
+                new ByteArrayInputStream(bytes));
+        Assert.assertEquals(expected, reader.readObject(
+                ByteBuffer.wrap(bytes)));
+        reader.setLazyInlineXML(true);
+        Assert.assertEquals(expected, reader.readObject(
+                ByteBuffer.wrap(bytes)));
+    }
+
+    @Test
+    public void inlineXMLFromBufferDeclaresOuterNamespaces()
+            throws IOException {
+        String xml = "<digitalObject xmlns='" + Constants.xmlns + "'"
+                + " xmlns:dc='http://purl.org/dc/elements/1.1/'"
+                + " xmlns:unused='urn:unused'>"
+                + "<datastream ID='ds' CONTROL_GROUP='X'>"
+                + "<datastreamVersion ID='ds.0'><xmlContent>"
+                + "<dc:title xmlns:p='urn:p' p:a='1'>Title</dc:title>"
+                + "</xmlContent></datastreamVersion></datastream>"
+                + "</digitalObject>";
+        FedoraObject obj = reader.readObject(ByteBuffer.wrap(
+                xml.getBytes("UTF-8")));
+        Assert.assertEquals("<dc:title xmlns:dc=\"http://purl.org/dc/"
+                + "elements/1.1/\" xmlns:p=\"urn:p\" p:a=\"1\">Title"
+                + "</dc:title>",
+                getFirstVersion(obj, "ds").inlineXML().value());
+    }
+
+    @Test
+    public void inlineXMLFromBufferInOtherEncodingReserialized()
+            throws IOException {
+        // the JDK's parser is given UTF-8 by the reader, overriding the
+        // declared encoding, but Aalto honors the declaration
+        reader.setStAXBackend(StAXBackend.AALTO);
+        String xml = "<?xml version='1.0' encoding='ISO-8859-1'?>"
+                + "<digitalObject xmlns='" + Constants.xmlns + "'>"
+                + "<datastream ID='ds' CONTROL_GROUP='X'>"
+                + "<datastreamVersion ID='ds.0'><xmlContent>"
+                + "<doc>\u00e9</doc>"
+                + "</xmlContent></datastreamVersion></datastream>"
+                + "</digitalObject>";
+        FedoraObject obj = reader.readObject(ByteBuffer.wrap(
+                xml.getBytes("ISO-8859-1")));
+        Assert.assertEquals("<doc>\u00e9</doc>",
+                getFirstVersion(obj, "ds").inlineXML().value());
+    }
+
+    private static void assertLazyContent(FedoraObject eager,
+                                          FedoraObject lazy,
+                                          String dsId,
+                                          String expected,
+                                          boolean embedded)
+            throws IOException {
+        EmbeddedContentResolver resolver = new EmbeddedContentResolver();
+        try {
+            URI eagerRef = getFirstVersion(eager, dsId).contentLocation();
+            URI lazyRef = getFirstVersion(lazy, dsId).contentLocation();
+            Assert.assertEquals(embedded ? EmbeddedContentResolver.SCHEME
+                    : "file", lazyRef.getScheme());
+            Assert.assertEquals(expected, IOUtils.toString(
+                    resolver.resolveContent(null, eagerRef), "UTF-8"));
+            Assert.assertEquals(expected, IOUtils.toString(
+                    resolver.resolveContent(null, lazyRef), "UTF-8"));
+        } finally {
+            resolver.close();
+        }
+    }
+
+    @Test
+    public void projectAll() throws IOException {
+        FedoraObject obj = reader.readObject(getResource("projection"));
+        Assert.assertEquals(State.ACTIVE, obj.state());
+        Assert.assertEquals("[BIN, DC]", obj.datastreams().keySet().toString());
+        Assert.assertEquals(3, obj.datastreams().get("DC").versions().size());
+        Assert.assertNotNull(getFirstVersion(obj, "BIN").contentLocation());
+    }
+
+    @Test
+    public void projectDatastreamIds() throws IOException {
+        ReadProjection projection = new ReadProjection();
+        projection.setDatastreamIds(Collections.singleton("DC"));
+        reader.setProjection(projection);
+        FedoraObject obj = reader.readObject(getResource("projection"));
+        Assert.assertEquals("[DC]", obj.datastreams().keySet().toString());
+    }
+
+    @Test
+    public void projectNoDatastreams() throws IOException {
+        ReadProjection projection = new ReadProjection();
+        projection.setDatastreamIds(new HashSet<String>());
+        reader.setProjection(projection);
+        FedoraObject obj = reader.readObject(getResource("projection"));
+        Assert.assertEquals("test:projection", obj.pid());
+        Assert.assertEquals(State.ACTIVE, obj.state());
+        Assert.assertEquals(0, obj.datastreams().size());
+    }
+
+    @Test
+    public void projectNoInlineXML() throws IOException {
+        ReadProjection projection = new ReadProjection();
+        projection.setInlineXML(false);
+        reader.setProjection(projection);
+        FedoraObject obj = reader.readObject(getResource("projection"));
+        Assert.assertEquals(3, obj.datastreams().get("DC").versions().size());
+        Assert.assertNull(getFirstVersion(obj, "DC").inlineXML());
+        Assert.assertNotNull(getFirstVersion(obj, "BIN").contentLocation());
+    }
+
+    @Test
+    public void projectNoBinaryContent() throws IOException {
+        ReadProjection projection = new ReadProjection();
+        projection.setBinaryContent(false);
+        reader.setProjection(projection);
+        FedoraObject obj = reader.readObject(getResource("projection"));
+        Assert.assertEquals("BIN.0", getFirstVersion(obj, "BIN").id());
+        Assert.assertNull(getFirstVersion(obj, "BIN").contentLocation());
+        Assert.assertNotNull(getFirstVersion(obj, "DC").inlineXML());
+    }
+
+    @Test
+    public void projectLatestVersionOnly() throws IOException {
+        ReadProjection projection = new ReadProjection();
+        projection.setLatestVersionOnly(true);
+        reader.setProjection(projection);
+        FedoraObject obj = reader.readObject(getResource("projection"));
+        Assert.assertEquals(1, obj.datastreams().get("DC").versions().size());
+        DatastreamVersion dsv = getFirstVersion(obj, "DC");
+        Assert.assertEquals("DC.2", dsv.id());
+        Assert.assertEquals("<dc version=\"2\"></dc>", dsv.inlineXML().value());
+        Assert.assertEquals(1, obj.datastreams().get("BIN").versions().size());
+    }
+
+    @Test
+    public void projectLatestVersionOnlyHandlesLatestContentOnly()
+            throws IOException {
+        ReadProjection projection = new ReadProjection();
+        projection.setLatestVersionOnly(true);
+        reader.setProjection(projection);
+        final List<String> handled = new ArrayList<String>();
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        reader.setContentHandler(new ContentHandler() {
+            @Override
+            public OutputStream handleContent(FedoraObject obj, Datastream ds,
+                                              DatastreamVersion dsv) {
+                handled.add(dsv.id());
+                return content;
+            }
+            @Override
+            public void close() {
+            }
+        });
+        FedoraObject obj = reader.readObject(toStream(
+                "<foxml:digitalObject xmlns:foxml='" + Constants.xmlns + "'"
+                + " PID='test:1'>"
+                + "<foxml:datastream ID='M1' CONTROL_GROUP='M'>"
+                + "<foxml:datastreamVersion ID='M1.0'"
+                + " CREATED='2011-01-01T00:00:00.000Z'>"
+                + "<foxml:binaryContent>MA==</foxml:binaryContent>"
+                + "</foxml:datastreamVersion>"
+                + "<foxml:datastreamVersion ID='M1.1'"
+                + " CREATED='2011-01-02T00:00:00.000Z'>"
+                + "<foxml:binaryContent>MQ==</foxml:binaryContent>"
+                + "</foxml:datastreamVersion>"
+                + "<foxml:datastreamVersion ID='M1.2'"
+                + " CREATED='2011-01-03T00:00:00.000Z'>"
+                + "<foxml:binaryContent>Mg==</foxml:binaryContent>"
+                + "</foxml:datastreamVersion>"
+                + "</foxml:datastream>"
+                + "</foxml:digitalObject>"));
+        Assert.assertEquals(1, obj.datastreams().get("M1").versions().size());
+        Assert.assertEquals("[M1.2]", handled.toString());
+        Assert.assertEquals("2", content.toString("UTF-8"));
+    }
+
+    @Test
+    public void projectionIsCopied() throws IOException {
+        ReadProjection projection = new ReadProjection();
+        reader.setProjection(projection);
+        projection.setDatastreamIds(new HashSet<String>());
+        FedoraObject obj = ((FOXMLReader) reader.getInstance()).readObject(
+                getResource("projection"));
+        Assert.assertEquals(2, obj.datastreams().size());
+    }
+
+    @Test
+    public void headerOnlyStopsAfterProperties() throws IOException {
+        ReadProjection projection = new ReadProjection();
+        projection.setDatastreamIds(new HashSet<String>());
+        reader.setProjection(projection);
+        // the truncated remainder would be a parse error if it were read
+        FedoraObject obj = reader.readObject(toStream(
+                "<foxml:digitalObject xmlns:foxml='" + Constants.xmlns + "'"
+                + " PID='test:1'>"
+                + "<foxml:objectProperties>"
+                + "<foxml:property NAME='" + Constants.LABEL_URI + "'"
+                + " VALUE='label'/>"
+                + "</foxml:objectProperties>"
+                + "<foxml:datastream ID='ds'><foxml:datastreamVers"));
+        Assert.assertEquals("test:1", obj.pid());
+        Assert.assertEquals("label", obj.label());
+        Assert.assertEquals(0, obj.datastreams().size());
+    }
+
+    @Test
+    public void headerOnlyReadObjects() throws IOException {
+        ReadProjection projection = new ReadProjection();
+        projection.setDatastreamIds(new HashSet<String>());
+        reader.setProjection(projection);
+        Source<FedoraObject> objects = reader.readObjects(toStream(
+                "<objects xmlns:foxml='" + Constants.xmlns + "'>"
+                + "<foxml:digitalObject PID='test:1'>"
+                + "<foxml:datastream ID='ds'>"
+                + "<foxml:datastreamVersion ID='ds.0'><foxml:xmlContent>"
+                + "<foxml:digitalObject PID='test:nested'/>"
+                + "</foxml:xmlContent></foxml:datastreamVersion>"
+                + "</foxml:datastream>"
+                + "</foxml:digitalObject>"
+                + "<foxml:digitalObject PID='test:2'/>"
+                + "</objects>"));
+        Assert.assertEquals("test:1", objects.next().pid());
+        Assert.assertEquals("test:2", objects.next().pid());
+        Assert.assertFalse(objects.hasNext());
+    }
+
+    private static DatastreamVersion getFirstVersion(FedoraObject obj,
+                                                     String dsId) {
+        return obj.datastreams().get(dsId).versions().first();
+    }
+
+    static InputStream toStream(String xml) throws IOException {
+        return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+    }
+
+    static InputStream getResource(String testName) {
+        return FOXMLReaderTest.class.getClassLoader().getResourceAsStream(
+                "foxml/" + testName + ".xml");
+    }
+
+    static File getResourceFile(String testName) throws URISyntaxException {
+        return new File(FOXMLReaderTest.class.getClassLoader().getResource(
+                "foxml/" + testName + ".xml").toURI());
+    }
+
+    static class RecordingVisitor implements DTOVisitor {
+
+        final List<String> events = new ArrayList<String>();
+
+        FedoraObject obj;
+        Datastream ds;
+        DatastreamVersion dsv;
+
+        @Override
+        public void visitObject(FedoraObject obj) {
+            this.obj = obj;
+            events.add("object");
+        }
+
+        @Override
+        public void visitDatastream(FedoraObject obj, Datastream ds) {
+            this.ds = ds;
+            events.add(ds.id());
+        }
+
+        @Override
+        public void visitDatastreamVersion(FedoraObject obj,
+                                           Datastream ds,
+                                           DatastreamVersion dsv) {
+            this.dsv = dsv;
+            events.add(dsv.id());
+        }
+
+        @Override
+        public void endObject(FedoraObject obj) {
+            events.add("end");
+        }
+    }
+
+}
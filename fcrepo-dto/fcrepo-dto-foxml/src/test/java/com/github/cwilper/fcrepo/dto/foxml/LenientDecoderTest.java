@@ -0,0 +1,90 @@
+package com.github.cwilper.fcrepo.dto.foxml;
+
+import com.github.cwilper.fcrepo.dto.core.ControlGroup;
+import com.github.cwilper.fcrepo.dto.core.State;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+public class LenientDecoderTest {
+
+    @Test
+    public void decodeState() {
+        for (State state: State.values()) {
+            Assert.assertEquals(state,
+                    LenientDecoder.decodeState(state.shortName()));
+            Assert.assertEquals(state,
+                    LenientDecoder.decodeState(state.longName()));
+        }
+        Assert.assertNull(LenientDecoder.decodeState(""));
+        Assert.assertNull(LenientDecoder.decodeState("a"));
+        Assert.assertNull(LenientDecoder.decodeState("active"));
+        Assert.assertNull(LenientDecoder.decodeState("Activ"));
+        Assert.assertNull(LenientDecoder.decodeState("Deleted!"));
+    }
+
+    @Test
+    public void decodeControlGroup() {
+        for (ControlGroup controlGroup: ControlGroup.values()) {
+            Assert.assertEquals(controlGroup,
+                    LenientDecoder.decodeControlGroup(
+                            controlGroup.shortName()));
+        }
+        Assert.assertNull(LenientDecoder.decodeControlGroup(""));
+        Assert.assertNull(LenientDecoder.decodeControlGroup("x"));
+        Assert.assertNull(LenientDecoder.decodeControlGroup("XX"));
+    }
+
+    @Test
+    public void decodeBoolean() {
+        Assert.assertEquals(Boolean.TRUE, LenientDecoder.decodeBoolean("TRUE"));
+        Assert.assertEquals(Boolean.TRUE, LenientDecoder.decodeBoolean("1"));
+        Assert.assertEquals(Boolean.FALSE,
+                LenientDecoder.decodeBoolean("false"));
+        Assert.assertEquals(Boolean.FALSE, LenientDecoder.decodeBoolean("0"));
+        Assert.assertNull(LenientDecoder.decodeBoolean("yes"));
+    }
+
+    @Test
+    public void decodeLong() {
+        String[] values = new String[] {
+                "0", "-0", "+0", "42", "-42", "+42", "007",
+                String.valueOf(Long.MAX_VALUE),
+                String.valueOf(Long.MIN_VALUE),
+                "9223372036854775808", "-9223372036854775809",
+                "99999999999999999999", "", "-", "+", "1.0", "1e3", " 1",
+                "0x10", "--1"
+        };
+        for (String value: values) {
+            Long expected;
+            try {
+                expected = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                expected = null;
+            }
+            Assert.assertEquals(value, expected,
+                    LenientDecoder.decodeLong(value));
+        }
+    }
+
+    @Test
+    public void decodeURI() throws URISyntaxException {
+        String[] good = new String[] {
+                "info:fedora/demo:1", "http://example.org/a%20b?c=d#e",
+                "relative/path", "urn:x", "http://ex.org/café"
+        };
+        for (String value: good) {
+            Assert.assertEquals(new URI(value),
+                    LenientDecoder.decodeURI(value));
+        }
+        String[] bad = new String[] {
+                "a b", "a%2", "a%zz", "<a>", "a|b", "a\tb", ":no-scheme"
+        };
+        for (String value: bad) {
+            Assert.assertNull(value, LenientDecoder.decodeURI(value));
+        }
+    }
+
+}